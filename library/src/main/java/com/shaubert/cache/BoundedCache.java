@@ -0,0 +1,375 @@
+package com.shaubert.cache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Thread-safe {@link com.shaubert.cache.Cache Cache} with limited number of entries and/or total weight.
+ * Least recently used entries are evicted when limits are exceeded.
+ * <p>
+ * Evicted entries are just removed from memory, {@link Entry#clear() Entry.clear()} is not called for them.
+ * So persistable entries stay in {@link com.shaubert.cache.persistance.DataStorage DataStorage} and will be
+ * loaded from it on the next {@link #get(String) get()}.
+ * <p>
+ * Weight of entry is calculated by {@link com.shaubert.cache.Weigher Weigher} when entry is accessed through cache,
+ * call {@link #trimToSize()} if values were changed without access through cache. Weigher is called outside
+ * of cache lock, so it may access entry value, which can trigger listeners and storage loads.
+ * <p>
+ * Entries are created outside of cache lock, only threads requesting the same not yet created entry are blocked.
+ * Evicted entry that is still referenced by caller is not connected to cache anymore: next {@link #get(String)
+ * get()} of its key creates new entry, so both entries may exist at the same time and their storage loads and
+ * saves are not ordered. Don't keep entries of bounded cache, get them from cache when needed.
+ */
+public class BoundedCache implements ObservableCache {
+
+    private final LinkedHashMap<String, Node> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private EntryKeyFactory keyProducer;
+    private EntryFactory entryFactory;
+    private final EntryListeners listeners = new EntryListeners();
+    private final EntryListener entryListener = new EntryListener() {
+        @Override
+        public void onEntryChanged(Entry<?> entry, int changes) {
+            listeners.notifyChanged(entry, changes);
+        }
+    };
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final Weigher weigher;
+    private long weight;
+
+    protected BoundedCache(Builder builder) {
+        this.keyProducer = builder.keyFactory;
+        this.entryFactory = builder.entryFactory;
+        this.maxEntries = builder.maxEntries;
+        this.maxWeight = builder.maxWeight;
+        this.weigher = builder.weigher;
+    }
+
+    public static Builder newBuilder(EntryKeyFactory keyFactory, EntryFactory entryFactory) {
+        return new Builder(keyFactory, entryFactory);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Entry<T> getOrCreateEntry(String key) {
+        Node node;
+        synchronized (this) {
+            node = cache.get(key);
+            if (node == null) {
+                node = new Node(key);
+                cache.put(key, node);
+            }
+        }
+
+        Entry<T> res = (Entry<T>) node.getEntry();
+        int newWeight = weigh(res);
+
+        List<Entry<?>> evicted = null;
+        synchronized (this) {
+            if (cache.get(key) == node) {
+                updateWeight(node, newWeight);
+                evicted = trim(node);
+            }
+        }
+
+        notifyEvicted(evicted);
+        return res;
+    }
+
+    /**
+     * Creates entry for key. Called outside of cache lock, but under lock of the key.
+     */
+    protected <T> Entry<T> createEntry(String key) {
+        return entryFactory.createEntry(key);
+    }
+
+    /**
+     * Called after entry is created and cache started to listen to its changes. Called outside of cache lock,
+     * but under lock of the key, so other threads requesting the key wait for this method.
+     * @param entry created entry
+     */
+    protected void onEntryCreated(Entry<?> entry) {
+    }
+
+    /**
+     * Called when entry is evicted from cache because of size limits. Called outside of cache lock.
+     * @param entry evicted entry
+     */
+    protected void onEntryEvicted(Entry<?> entry) {
+    }
+
+    /**
+     * Called outside of cache lock.
+     * @return weight of entry or 0 if weigher is not provided
+     */
+    private int weigh(Entry<?> entry) {
+        if (weigher == null) return 0;
+
+        int result = weigher.weigh(entry);
+        if (result < 0) {
+            throw new IllegalStateException("negative weight " + result + " of " + entry.getKey());
+        }
+        return result;
+    }
+
+    /**
+     * Called under cache lock.
+     */
+    private void updateWeight(Node node, int newWeight) {
+        weight += newWeight - node.weight;
+        node.weight = newWeight;
+    }
+
+    /**
+     * Evicts least recently used entries until limits are satisfied.
+     * @param keep entry that should not be evicted, usually entry that is returned to caller
+     * @return evicted entries or null
+     */
+    private List<Entry<?>> trim(Node keep) {
+        List<Entry<?>> evicted = null;
+        Iterator<Node> iterator = cache.values().iterator();
+        while ((cache.size() > maxEntries || weight > maxWeight) && iterator.hasNext()) {
+            Node node = iterator.next();
+            //entries that are being created are kept, they are about to be returned to caller
+            if (node == keep || node.entry == null) continue;
+
+            iterator.remove();
+            node.removed = true;
+            weight -= node.weight;
+            if (evicted == null) evicted = new ArrayList<>();
+            evicted.add(node.entry);
+        }
+        return evicted;
+    }
+
+    private void notifyEvicted(List<Entry<?>> evicted) {
+        if (evicted == null) return;
+
+        for (Entry<?> entry : evicted) {
+            EntryListeners.unlisten(entry, entryListener);
+            onEntryEvicted(entry);
+        }
+    }
+
+    /**
+     * Recalculates weight of all entries and evicts entries if limits are exceeded.
+     */
+    public void trimToSize() {
+        List<Node> nodes = new ArrayList<>();
+        synchronized (this) {
+            for (Node node : cache.values()) {
+                if (node.entry != null) nodes.add(node);
+            }
+        }
+
+        int[] weights = new int[nodes.size()];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = weigh(nodes.get(i).entry);
+        }
+
+        List<Entry<?>> evicted;
+        synchronized (this) {
+            for (int i = 0; i < weights.length; i++) {
+                Node node = nodes.get(i);
+                //node could be evicted or removed while weights were calculated
+                if (!node.removed) {
+                    updateWeight(node, weights[i]);
+                }
+            }
+            evicted = trim(null);
+        }
+        notifyEvicted(evicted);
+    }
+
+    /**
+     * @return number of entries in cache
+     */
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    /**
+     * @return total weight of entries calculated on last access or 0 if {@link com.shaubert.cache.Weigher Weigher}
+     * is not provided
+     */
+    public synchronized long weight() {
+        return weight;
+    }
+
+    protected <T> String getCacheKey(Class<T> cls, String qualifier) {
+        return keyProducer.getKey(cls, qualifier);
+    }
+
+    @Override
+    public <T> Entry<T> get(String entryKey) {
+        return getOrCreateEntry(entryKey);
+    }
+
+    @Override
+    public <T> Entry<T> get(Class<T> cls, String qualifier) {
+        return getOrCreateEntry(getCacheKey(cls, qualifier));
+    }
+
+    @Override
+    public <T> Entry<T> get(Class<T> cls) {
+        return get(cls, null);
+    }
+
+    @Override
+    public void foreach(Procedure<Entry<?>> action) {
+        List<Entry<?>> temp = new ArrayList<>();
+        synchronized (this) {
+            for (Node node : cache.values()) {
+                if (node.entry != null) temp.add(node.entry);
+            }
+        }
+        for (Entry<?> entry : temp) {
+            action.perform(entry);
+        }
+    }
+
+    @Override
+    public void clear(Function<Entry<?>, Boolean> filter) {
+        List<Entry<?>> temp = new ArrayList<>();
+        synchronized (this) {
+            for (Iterator<Map.Entry<String, Node>> iterator = cache.entrySet().iterator(); iterator.hasNext(); ) {
+                Node node = iterator.next().getValue();
+                Entry<?> entry = node.entry;
+                if (entry == null) {
+                    //entry is being created, it's cleared only by clear()
+                    if (filter == null) {
+                        iterator.remove();
+                        node.removed = true;
+                    }
+                } else if (filter == null || filter.apply(entry)) {
+                    iterator.remove();
+                    node.removed = true;
+                    weight -= node.weight;
+                    temp.add(entry);
+                }
+            }
+        }
+        for (Entry<?> entry : temp) {
+            entry.clear();
+            EntryListeners.unlisten(entry, entryListener);
+        }
+    }
+
+    @Override
+    public void clear() {
+        clear(null);
+    }
+
+    @Override
+    public void addListener(EntryListener listener, Executor executor) {
+        listeners.add(listener, executor);
+    }
+
+    @Override
+    public void removeListener(EntryListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Lazily creates {@link com.shaubert.cache.Entry Entry}. Node is put in map first, so only one
+     * entry is created for the key while node is in cache.
+     */
+    private class Node {
+        final String key;
+        volatile Entry<?> entry;
+        int weight;
+        /**
+         * Node is removed from cache. Guarded by cache lock.
+         */
+        boolean removed;
+
+        Node(String key) {
+            this.key = key;
+        }
+
+        Entry<?> getEntry() {
+            Entry<?> result = entry;
+            if (result == null) {
+                synchronized (this) {
+                    result = entry;
+                    if (result == null) {
+                        result = createEntry(key);
+                        EntryListeners.listen(result, entryListener, null);
+                        entry = result;
+                        onEntryCreated(result);
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    public static final class Builder {
+        private EntryKeyFactory keyFactory;
+        private EntryFactory entryFactory;
+        private int maxEntries = Integer.MAX_VALUE;
+        private long maxWeight = Long.MAX_VALUE;
+        private Weigher weigher;
+
+        private Builder(EntryKeyFactory keyFactory, EntryFactory entryFactory) {
+            this.keyFactory = keyFactory;
+            this.entryFactory = entryFactory;
+        }
+
+        /**
+         * @param maxEntries max number of entries in cache
+         * @return this
+         */
+        public Builder maxEntries(int maxEntries) {
+            if (maxEntries <= 0) throw new IllegalArgumentException("maxEntries should be positive");
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * @param maxWeight max total weight of entries in cache. Requires {@link #weigher(Weigher) weigher}.
+         * @return this
+         */
+        public Builder maxWeight(long maxWeight) {
+            if (maxWeight <= 0) throw new IllegalArgumentException("maxWeight should be positive");
+            this.maxWeight = maxWeight;
+            return this;
+        }
+
+        /**
+         * @param weigher calculates weight of entries
+         * @return this
+         */
+        public Builder weigher(Weigher weigher) {
+            this.weigher = weigher;
+            return this;
+        }
+
+        /**
+         * Build cache or throw exception if limits are not set
+         * @return created cache
+         */
+        public BoundedCache build() {
+            validate();
+            return new BoundedCache(this);
+        }
+
+        void validate() {
+            if (maxEntries == Integer.MAX_VALUE && maxWeight == Long.MAX_VALUE) {
+                throw new IllegalArgumentException("provide maxEntries or maxWeight");
+            }
+            if (maxWeight != Long.MAX_VALUE && weigher == null) {
+                throw new IllegalArgumentException("provide weigher to limit cache weight");
+            }
+        }
+
+        int getMaxEntries() {
+            return maxEntries;
+        }
+    }
+
+}
@@ -0,0 +1,219 @@
+package com.shaubert.cache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Thread-safe {@link com.shaubert.cache.Cache Cache}. Guarantees that
+ * {@link com.shaubert.cache.EntryFactory#createEntry(String) EntryFactory.createEntry()} is called
+ * exactly once per key even if several threads request the same entry at the same time. Only threads
+ * requesting the same not yet created entry are blocked.
+ * <p>
+ * Entries requested with {@link #get(Class, String) get(Class, qualifier)} are also indexed by class and qualifier,
+ * so repeated requests don't build key strings.
+ * <p>
+ * {@link #foreach(Procedure) foreach()} and {@link #clear(Function) clear()} iterate over weakly consistent view
+ * of entries: they never throw {@link java.util.ConcurrentModificationException ConcurrentModificationException}
+ * and may or may not reflect entries created during iteration.
+ */
+public class ConcurrentCache implements ObservableCache {
+
+    private final ConcurrentMap<String, EntryHolder> cache;
+    private final ConcurrentMap<Class<?>, ClassIndex> classIndex;
+    private EntryKeyFactory keyProducer;
+    private EntryFactory entryFactory;
+    private final EntryListeners listeners = new EntryListeners();
+    private final EntryListener entryListener = new EntryListener() {
+        @Override
+        public void onEntryChanged(Entry<?> entry, int changes) {
+            listeners.notifyChanged(entry, changes);
+        }
+    };
+
+    public ConcurrentCache(EntryKeyFactory keyFactory, EntryFactory entryFactory) {
+        this(keyFactory, entryFactory, 4);
+    }
+
+    /**
+     * @param keyFactory factory of {@link com.shaubert.cache.Entry Entry} keys
+     * @param entryFactory factory of {@link com.shaubert.cache.Entry Entry}
+     * @param concurrencyLevel estimated number of threads concurrently accessing cache
+     */
+    public ConcurrentCache(EntryKeyFactory keyFactory, EntryFactory entryFactory, int concurrencyLevel) {
+        this.keyProducer = keyFactory;
+        this.entryFactory = entryFactory;
+        this.cache = new ConcurrentHashMap<>(16, 0.75f, concurrencyLevel);
+        this.classIndex = new ConcurrentHashMap<>(16, 0.75f, concurrencyLevel);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Entry<T> getOrCreateEntry(String key) {
+        return (Entry<T>) getOrCreateHolder(key, null).getEntry();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Entry<T> getOrCreateEntry(Class<T> cls, String qualifier) {
+        ClassIndex index = classIndex.get(cls);
+        if (index == null) {
+            ClassIndex newIndex = new ClassIndex();
+            index = classIndex.putIfAbsent(cls, newIndex);
+            if (index == null) {
+                index = newIndex;
+            }
+        }
+
+        EntryHolder holder = index.get(qualifier);
+        if (holder == null || holder.removed) {
+            String key = getCacheKey(cls, qualifier);
+            holder = getOrCreateHolder(key, new DefaultEntryKeyFactory.KeyParamsBundle(cls, qualifier));
+            index.put(qualifier, holder);
+        }
+        return (Entry<T>) holder.getEntry();
+    }
+
+    private EntryHolder getOrCreateHolder(String key, EntryKeyFactory.KeyParams keyParams) {
+        EntryHolder holder = cache.get(key);
+        if (holder == null) {
+            EntryHolder newHolder = new EntryHolder(key, keyParams);
+            holder = cache.putIfAbsent(key, newHolder);
+            if (holder == null) {
+                holder = newHolder;
+            }
+        }
+        return holder;
+    }
+
+    protected <T> String getCacheKey(Class<T> cls, String qualifier) {
+        return keyProducer.getKey(cls, qualifier);
+    }
+
+    @Override
+    public <T> Entry<T> get(String entryKey) {
+        return getOrCreateEntry(entryKey);
+    }
+
+    @Override
+    public <T> Entry<T> get(Class<T> cls, String qualifier) {
+        return getOrCreateEntry(cls, qualifier);
+    }
+
+    @Override
+    public <T> Entry<T> get(Class<T> cls) {
+        return get(cls, null);
+    }
+
+    @Override
+    public void foreach(Procedure<Entry<?>> action) {
+        for (EntryHolder holder : cache.values()) {
+            action.perform(holder.getEntry());
+        }
+    }
+
+    @Override
+    public void clear(Function<Entry<?>, Boolean> filter) {
+        for (Map.Entry<String, EntryHolder> mapEntry : cache.entrySet()) {
+            EntryHolder holder = mapEntry.getValue();
+            Entry<?> entry = holder.getEntry();
+            if (filter == null || filter.apply(entry)) {
+                entry.clear();
+                EntryListeners.unlisten(entry, entryListener);
+                if (cache.remove(mapEntry.getKey(), holder)) {
+                    holder.removed = true;
+                }
+            }
+        }
+        if (filter == null) {
+            classIndex.clear();
+        } else {
+            for (ClassIndex index : classIndex.values()) {
+                index.removeCleared();
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        clear(null);
+    }
+
+    @Override
+    public void addListener(EntryListener listener, Executor executor) {
+        listeners.add(listener, executor);
+    }
+
+    @Override
+    public void removeListener(EntryListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Lazily creates {@link com.shaubert.cache.Entry Entry}. Holder is put in map first, so only one
+     * holder (and only one entry) exists for the key.
+     */
+    private class EntryHolder {
+        private final String key;
+        private EntryKeyFactory.KeyParams keyParams;
+        private volatile Entry<?> entry;
+        private volatile boolean removed;
+
+        EntryHolder(String key, EntryKeyFactory.KeyParams keyParams) {
+            this.key = key;
+            this.keyParams = keyParams;
+        }
+
+        Entry<?> getEntry() {
+            Entry<?> result = entry;
+            if (result == null) {
+                synchronized (this) {
+                    result = entry;
+                    if (result == null) {
+                        if (keyParams != null && entryFactory instanceof KeyParamsEntryFactory) {
+                            result = ((KeyParamsEntryFactory) entryFactory).createEntry(key, keyParams);
+                        } else {
+                            result = entryFactory.createEntry(key);
+                        }
+                        keyParams = null;
+                        EntryListeners.listen(result, entryListener, null);
+                        entry = result;
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Holders of one data class by qualifier. Removed holders are replaced on the next request.
+     */
+    private static class ClassIndex {
+        private final ConcurrentMap<String, EntryHolder> qualified = new ConcurrentHashMap<>();
+        private volatile EntryHolder unqualified;
+
+        EntryHolder get(String qualifier) {
+            return qualifier != null ? qualified.get(qualifier) : unqualified;
+        }
+
+        void put(String qualifier, EntryHolder holder) {
+            if (qualifier != null) {
+                qualified.put(qualifier, holder);
+            } else {
+                unqualified = holder;
+            }
+        }
+
+        void removeCleared() {
+            for (Map.Entry<String, EntryHolder> entry : qualified.entrySet()) {
+                if (entry.getValue().removed) {
+                    qualified.remove(entry.getKey(), entry.getValue());
+                }
+            }
+            EntryHolder holder = unqualified;
+            if (holder != null && holder.removed) {
+                unqualified = null;
+            }
+        }
+    }
+
+}
@@ -4,12 +4,20 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
-public class DefaultCache implements Cache {
+public class DefaultCache implements ObservableCache {
 
     private Map<String, Entry<?>> cache = new HashMap<>();
     private EntryKeyFactory keyProducer;
     private EntryFactory entryFactory;
+    private final EntryListeners listeners = new EntryListeners();
+    private final EntryListener entryListener = new EntryListener() {
+        @Override
+        public void onEntryChanged(Entry<?> entry, int changes) {
+            listeners.notifyChanged(entry, changes);
+        }
+    };
 
     public DefaultCache(EntryKeyFactory keyFactory, EntryFactory entryFactory) {
         this.keyProducer = keyFactory;
@@ -17,10 +25,15 @@ public class DefaultCache implements Cache {
     }
 
     @SuppressWarnings("unchecked")
-    private <T> Entry<T> getOrCreateEntry(String key) {
+    private <T> Entry<T> getOrCreateEntry(String key, EntryKeyFactory.KeyParams keyParams) {
         Entry<T> res = (Entry<T>) cache.get(key);
         if (res == null) {
-            res = entryFactory.createEntry(key);
+            if (keyParams != null && entryFactory instanceof KeyParamsEntryFactory) {
+                res = ((KeyParamsEntryFactory) entryFactory).createEntry(key, keyParams);
+            } else {
+                res = entryFactory.createEntry(key);
+            }
+            EntryListeners.listen(res, entryListener, null);
             cache.put(key, res);
         }
 
@@ -33,12 +46,13 @@ public class DefaultCache implements Cache {
 
     @Override
     public <T> Entry<T> get(String entryKey) {
-        return getOrCreateEntry(entryKey);
+        return getOrCreateEntry(entryKey, null);
     }
 
     @Override
     public <T> Entry<T> get(Class<T> cls, String qualifier) {
-        return getOrCreateEntry(getCacheKey(cls, qualifier));
+        return getOrCreateEntry(getCacheKey(cls, qualifier),
+                new DefaultEntryKeyFactory.KeyParamsBundle(cls, qualifier));
     }
 
     @Override
@@ -60,6 +74,7 @@ public class DefaultCache implements Cache {
         for (Entry entry : temp) {
             if (filter == null || filter.apply(entry)) {
                 entry.clear();
+                EntryListeners.unlisten(entry, entryListener);
                 cache.remove(entry.getKey());
             }
         }
@@ -69,4 +84,14 @@ public class DefaultCache implements Cache {
     public void clear() {
         clear(null);
     }
+
+    @Override
+    public void addListener(EntryListener listener, Executor executor) {
+        listeners.add(listener, executor);
+    }
+
+    @Override
+    public void removeListener(EntryListener listener) {
+        listeners.remove(listener);
+    }
 }
@@ -1,21 +1,38 @@
 package com.shaubert.cache;
 
 import java.util.*;
+import java.util.concurrent.Executor;
 
-public class DefaultEntry<DATA> implements Entry<DATA> {
+public class DefaultEntry<DATA> implements ObservableEntry<DATA>, MarkQueries {
     private final String key;
     private final Class<DATA> dataClass;
 
-    private Set<Object> marks = new HashSet<>();
+    private final Marks marks = new Marks();
     private Collection<Object> readOnlyMarks = Collections.unmodifiableCollection(marks);
 
     private DATA value;
     private boolean mergeable;
 
+    private final EntryListeners listeners = new EntryListeners();
+
+    private final ExpirationPolicy expirationPolicy;
+    private long writeDeadline = ExpirationPolicy.NO_DEADLINE;
+    private long deadline = ExpirationPolicy.NO_DEADLINE;
+
     public DefaultEntry(String key, Class<DATA> dataClass) {
+        this(key, dataClass, null);
+    }
+
+    /**
+     * @param key entry key
+     * @param dataClass value class
+     * @param expirationPolicy optional value expiration policy
+     */
+    public DefaultEntry(String key, Class<DATA> dataClass, ExpirationPolicy expirationPolicy) {
         this.key = key;
         this.dataClass = dataClass;
         this.mergeable = MergeableData.class.isAssignableFrom(dataClass);
+        this.expirationPolicy = expirationPolicy;
     }
 
     @Override
@@ -25,36 +42,90 @@ public class DefaultEntry<DATA> implements Entry<DATA> {
 
     @Override
     public DATA getValue() {
+        if (expirationPolicy != null) {
+            checkExpiration();
+        }
+        return peekValue();
+    }
+
+    /**
+     * @return stored value without expiration check
+     */
+    protected DATA peekValue() {
         return value;
     }
 
+    /**
+     * Replace stored value, no merge is performed.
+     * @param value new value or null
+     */
+    protected void storeValue(DATA value) {
+        this.value = value;
+    }
+
+    private void checkExpiration() {
+        long now = ExpirationPolicy.now();
+        if (ExpirationPolicy.isExpired(now, deadline)) {
+            deadline = ExpirationPolicy.NO_DEADLINE;
+            writeDeadline = ExpirationPolicy.NO_DEADLINE;
+            addMark(DIRTY_MARK);
+        } else if (deadline != ExpirationPolicy.NO_DEADLINE && expirationPolicy.expiresAfterAccess()) {
+            deadline = expirationPolicy.getDeadline(now, writeDeadline);
+        }
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public void setValue(DATA value) {
-        if (value != null && this.value != null && mergeable) {
-            this.value = ((MergeableData<DATA>) this.value).merge(value);
+        DATA current = peekValue();
+        if (value != null && current != null && mergeable) {
+            storeValue(((MergeableData<DATA>) current).merge(value));
         } else {
-            this.value = value;
+            storeValue(value);
+        }
+
+        if (expirationPolicy != null) {
+            resetExpiration();
+        }
+        listeners.notifyChanged(this, EntryListener.VALUE_CHANGED);
+    }
+
+    private void resetExpiration() {
+        if (peekValue() != null) {
+            long now = ExpirationPolicy.now();
+            writeDeadline = expirationPolicy.getWriteDeadline(now);
+            deadline = expirationPolicy.getDeadline(now, writeDeadline);
+        } else {
+            writeDeadline = ExpirationPolicy.NO_DEADLINE;
+            deadline = ExpirationPolicy.NO_DEADLINE;
         }
     }
 
     @Override
     public boolean hasValue() {
-        return value != null;
+        return peekValue() != null;
     }
 
     @Override
     public boolean addMark(Object mark) {
         if (mark == null) return false;
 
-        return marks.add(mark);
+        if (marks.add(mark)) {
+            listeners.notifyChanged(this, EntryListener.MARKS_CHANGED);
+            return true;
+        }
+        return false;
     }
 
     @Override
     public boolean removeMark(Object mark) {
         if (mark == null) return false;
 
-        return marks.remove(mark);
+        if (marks.remove(mark)) {
+            listeners.notifyChanged(this, EntryListener.MARKS_CHANGED);
+            return true;
+        }
+        return false;
     }
 
     @Override
@@ -64,7 +135,7 @@ public class DefaultEntry<DATA> implements Entry<DATA> {
 
     @Override
     public boolean hasMarkOf(Class<?> markClass) {
-        return getMarkOf(markClass) != null;
+        return marks.containsOf(markClass);
     }
 
     @Override
@@ -78,38 +149,44 @@ public class DefaultEntry<DATA> implements Entry<DATA> {
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public <T> T getMarkOf(Class<T> markClass) {
-        if (markClass == null) return null;
-
-        for (Object mark : marks) {
-            if (mark != null
-                    && markClass.isAssignableFrom(mark.getClass())) {
-                return (T) mark;
-            }
-        }
-        return null;
+        return marks.findOf(markClass);
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public <T> Collection<T> getMarksOf(Class<T> markClass) {
         ArrayList<T> list = new ArrayList<>();
-        if (markClass == null) return list;
-
-        for (Object mark : marks) {
-            if (mark != null
-                    && markClass.isAssignableFrom(mark.getClass())) {
-                list.add((T) mark);
-            }
-        }
+        marks.collectOf(markClass, list);
         return list;
     }
 
+    @Override
+    public <T> int getMarksOf(Class<T> markClass, Collection<? super T> result) {
+        return marks.collectOf(markClass, result);
+    }
+
+    @Override
+    public <T> int foreachMarkOf(Class<T> markClass, Procedure<? super T> action) {
+        return marks.foreachOf(markClass, action);
+    }
+
     @Override
     public void clear() {
-        value = null;
+        storeValue(null);
         marks.clear();
+        writeDeadline = ExpirationPolicy.NO_DEADLINE;
+        deadline = ExpirationPolicy.NO_DEADLINE;
+        listeners.notifyChanged(this, EntryListener.CLEARED);
+    }
+
+    @Override
+    public void addListener(EntryListener listener, Executor executor) {
+        listeners.add(listener, executor);
+    }
+
+    @Override
+    public void removeListener(EntryListener listener) {
+        listeners.remove(listener);
     }
 
     @Override
@@ -3,13 +3,18 @@ package com.shaubert.cache;
 
 import com.shaubert.cache.persistance.*;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * Cache {@link com.shaubert.cache.Entry Entry} factory
  */
-public class DefaultEntryFactory implements EntryFactory {
+public class DefaultEntryFactory implements KeyParamsEntryFactory {
 
     private EntryKeyFactory keyFactory;
     private DataStorage storage;
+    private ConcurrentMap<Class<?>, ExpirationPolicy> expirationPolicies = new ConcurrentHashMap<>();
+    private ConcurrentMap<Class<?>, ReferenceType> referenceTypes = new ConcurrentHashMap<>();
 
     /**
      * Cache {@link com.shaubert.cache.Entry Entry} factory without data storage.
@@ -32,12 +37,51 @@ public class DefaultEntryFactory implements EntryFactory {
         this.storage = storage;
     }
 
+    /**
+     * Set expiration policy for entries with provided data class. Affects only entries created after this call.
+     * @param dataClass data class
+     * @param policy expiration policy or null to remove policy
+     */
+    public void setExpirationPolicy(Class<?> dataClass, ExpirationPolicy policy) {
+        if (policy != null) {
+            expirationPolicies.put(dataClass, policy);
+        } else {
+            expirationPolicies.remove(dataClass);
+        }
+    }
+
+    /**
+     * Set how entries with provided data class hold their values. Affects only entries created after this call.
+     * Values of {@link com.shaubert.cache.persistance.PersistableData PersistableData} classes will be reloaded from
+     * storage after garbage collection.
+     * @param dataClass data class
+     * @param referenceType reference type or null to use {@link ReferenceType#STRONG STRONG}
+     */
+    public void setReferenceType(Class<?> dataClass, ReferenceType referenceType) {
+        if (referenceType != null && referenceType != ReferenceType.STRONG) {
+            referenceTypes.put(dataClass, referenceType);
+        } else {
+            referenceTypes.remove(dataClass);
+        }
+    }
+
     @Override
     public <T> Entry<T> createEntry(String key) {
-        EntryKeyFactory.KeyParams keyParams = keyFactory.getKeyParams(key);
+        return createEntry(key, keyFactory.getKeyParams(key));
+    }
+
+    @Override
+    public <T> Entry<T> createEntry(String key, EntryKeyFactory.KeyParams keyParams) {
         @SuppressWarnings("unchecked")
         Class<T> dataClass = (Class<T>) keyParams.getKeyClass();
-        DefaultEntry<T> entry = new DefaultEntry<>(key, dataClass);
+        ExpirationPolicy expirationPolicy = expirationPolicies.get(dataClass);
+        ReferenceType referenceType = referenceTypes.get(dataClass);
+        DefaultEntry<T> entry;
+        if (referenceType != null) {
+            entry = new ReferenceEntry<>(key, dataClass, referenceType, expirationPolicy);
+        } else {
+            entry = new DefaultEntry<>(key, dataClass, expirationPolicy);
+        }
 
         if (storage != null) {
             PersistableData persistable = keyParams.getKeyClass().getAnnotation(PersistableData.class);
@@ -3,16 +3,39 @@ package com.shaubert.cache;
 import android.text.TextUtils;
 import android.util.Log;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link com.shaubert.cache.EntryKeyFactory EntryKeyFactory} producing keys like {@code "com.example.Data/qualifier"}.
+ * Key prefixes and classes are cached, so keys are built without formatting class names and parsed without
+ * {@link java.lang.Class#forName(String) Class.forName()} for classes that were used to build keys.
+ * Qualifier may contain any characters.
+ */
 public class DefaultEntryKeyFactory implements EntryKeyFactory {
 
     public static final String TAG = DefaultEntryKeyFactory.class.getSimpleName();
 
     private static final char SEPARATOR = '/';
 
+    private final ConcurrentMap<Class<?>, String> prefixes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Class<?>> classes = new ConcurrentHashMap<>();
+
     @Override
     public String getKey(Class<?> clazz, String qualifier) {
         if (clazz == null) throw new NullPointerException("cache key-class should not be null");
-        return clazz.getName() + SEPARATOR + (qualifier != null ? qualifier : "");
+        String prefix = getPrefix(clazz);
+        return qualifier != null ? prefix.concat(qualifier) : prefix;
+    }
+
+    private String getPrefix(Class<?> clazz) {
+        String prefix = prefixes.get(clazz);
+        if (prefix == null) {
+            prefix = (clazz.getName() + SEPARATOR).intern();
+            classes.putIfAbsent(clazz.getName(), clazz);
+            prefixes.putIfAbsent(clazz, prefix);
+        }
+        return prefix;
     }
 
     @Override
@@ -22,18 +45,29 @@ public class DefaultEntryKeyFactory implements EntryKeyFactory {
 
     @Override
     public KeyParams getKeyParams(String key) {
-        if (!TextUtils.isEmpty(key)) {
-            String[] args = key.split("[" + SEPARATOR + "]");
-            if (args.length == 1 || args.length == 2) {
-                try {
-                    return new KeyParamsBundle(Class.forName(args[0]), args.length == 2 ? args[1] : null);
-                } catch (ClassNotFoundException e) {
-                    Log.e(TAG, "key params parsing error", e);
-                    throw new IllegalArgumentException("key params parsing error, key: " + key, e);
-                }
+        if (TextUtils.isEmpty(key)) {
+            throw new IllegalArgumentException("broken key: " + key);
+        }
+
+        //class names can't contain separator, so qualifier is everything after the first one
+        int separator = key.indexOf(SEPARATOR);
+        String className = separator >= 0 ? key.substring(0, separator) : key;
+        String qualifier = separator >= 0 && separator < key.length() - 1 ? key.substring(separator + 1) : null;
+        return new KeyParamsBundle(getClass(className, key), qualifier);
+    }
+
+    private Class<?> getClass(String className, String key) {
+        Class<?> clazz = classes.get(className);
+        if (clazz == null) {
+            try {
+                clazz = Class.forName(className);
+            } catch (ClassNotFoundException e) {
+                Log.e(TAG, "key params parsing error", e);
+                throw new IllegalArgumentException("key params parsing error, key: " + key, e);
             }
+            classes.putIfAbsent(className, clazz);
         }
-        throw new IllegalArgumentException("broken key: " + key);
+        return clazz;
     }
 
     public static class KeyParamsBundle implements KeyParams {
@@ -0,0 +1,39 @@
+package com.shaubert.cache;
+
+/**
+ * Listener of {@link com.shaubert.cache.Entry Entry} changes. Register it with
+ * {@link ObservableEntry#addListener(EntryListener, java.util.concurrent.Executor) ObservableEntry.addListener()}
+ * or {@link ObservableCache#addListener(EntryListener, java.util.concurrent.Executor) ObservableCache.addListener()}.
+ */
+public interface EntryListener {
+
+    /**
+     * Value was set with {@link Entry#setValue(Object) Entry.setValue()}
+     */
+    int VALUE_CHANGED = 1;
+
+    /**
+     * Mark was added or removed
+     */
+    int MARKS_CHANGED = 1 << 1;
+
+    /**
+     * {@link Entry#clear() Entry.clear()} was called
+     */
+    int CLEARED = 1 << 2;
+
+    /**
+     * Persistable entry finished loading from {@link com.shaubert.cache.persistance.DataStorage DataStorage}
+     */
+    int LOADED = 1 << 3;
+
+    /**
+     * Called when entry changed. If listener was registered with executor, changes that happened before
+     * notification was executed are delivered with one call.
+     * @param entry changed entry
+     * @param changes combination of {@link #VALUE_CHANGED}, {@link #MARKS_CHANGED}, {@link #CLEARED}
+     *                and {@link #LOADED} flags
+     */
+    void onEntryChanged(Entry<?> entry, int changes);
+
+}
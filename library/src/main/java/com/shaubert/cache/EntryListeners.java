@@ -0,0 +1,131 @@
+package com.shaubert.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Set of {@link com.shaubert.cache.EntryListener EntryListener} registrations used by
+ * {@link com.shaubert.cache.Entry Entry} and {@link com.shaubert.cache.Cache Cache} implementations.
+ * Notifications of listeners with executor are coalesced per entry until executor runs them.
+ */
+public final class EntryListeners {
+
+    private static final Registration[] EMPTY = new Registration[0];
+
+    private volatile Registration[] registrations = EMPTY;
+
+    /**
+     * Adds listener to entry if it's {@link com.shaubert.cache.ObservableEntry ObservableEntry}.
+     * @param entry entry
+     * @param listener listener
+     * @param executor executor to call listener on, null to call listener synchronously
+     */
+    public static void listen(Entry<?> entry, EntryListener listener, Executor executor) {
+        if (entry instanceof ObservableEntry) {
+            ((ObservableEntry<?>) entry).addListener(listener, executor);
+        }
+    }
+
+    /**
+     * Removes listener from entry if it's {@link com.shaubert.cache.ObservableEntry ObservableEntry}.
+     * @param entry entry
+     * @param listener listener
+     */
+    public static void unlisten(Entry<?> entry, EntryListener listener) {
+        if (entry instanceof ObservableEntry) {
+            ((ObservableEntry<?>) entry).removeListener(listener);
+        }
+    }
+
+    /**
+     * @param listener listener
+     * @param executor executor to call listener on, null to call listener synchronously
+     */
+    public synchronized void add(EntryListener listener, Executor executor) {
+        if (listener == null) throw new NullPointerException("listener should not be null");
+
+        Registration[] current = registrations;
+        Registration[] updated = new Registration[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = new Registration(listener, executor);
+        registrations = updated;
+    }
+
+    public synchronized void remove(EntryListener listener) {
+        Registration[] current = registrations;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].listener == listener) {
+                Registration[] updated = new Registration[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                current[i].removed = true;
+                registrations = updated;
+                return;
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return registrations.length == 0;
+    }
+
+    /**
+     * @param entry changed entry
+     * @param changes {@link com.shaubert.cache.EntryListener EntryListener} change flags
+     */
+    public void notifyChanged(Entry<?> entry, int changes) {
+        Registration[] current = registrations;
+        for (Registration registration : current) {
+            registration.notifyChanged(entry, changes);
+        }
+    }
+
+    private static class Registration implements Runnable {
+        final EntryListener listener;
+        final Executor executor;
+        volatile boolean removed;
+
+        private Map<Entry<?>, Integer> pendingChanges;
+
+        Registration(EntryListener listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+
+        void notifyChanged(Entry<?> entry, int changes) {
+            if (executor == null) {
+                listener.onEntryChanged(entry, changes);
+                return;
+            }
+
+            boolean schedule;
+            synchronized (this) {
+                schedule = pendingChanges == null;
+                if (schedule) {
+                    pendingChanges = new LinkedHashMap<>();
+                }
+                Integer pending = pendingChanges.get(entry);
+                pendingChanges.put(entry, pending != null ? pending | changes : changes);
+            }
+            if (schedule) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            Map<Entry<?>, Integer> changes;
+            synchronized (this) {
+                changes = pendingChanges;
+                pendingChanges = null;
+            }
+            if (changes == null || removed) return;
+
+            for (Map.Entry<Entry<?>, Integer> change : changes.entrySet()) {
+                listener.onEntryChanged(change.getKey(), change.getValue());
+            }
+        }
+    }
+
+}
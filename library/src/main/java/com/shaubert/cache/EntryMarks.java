@@ -0,0 +1,51 @@
+package com.shaubert.cache;
+
+import java.util.Collection;
+
+/**
+ * Mark queries for any {@link com.shaubert.cache.Entry Entry}. Entries implementing
+ * {@link com.shaubert.cache.MarkQueries MarkQueries} are queried without allocations, other entries through
+ * {@link Entry#getMarksOf(Class) Entry.getMarksOf()}.
+ */
+public final class EntryMarks {
+
+    private EntryMarks() {
+    }
+
+    /**
+     * Adds marks of entry with that class to provided collection.
+     * @param entry entry
+     * @param markClass mark class to find.
+     * @param result collection to add marks to.
+     * @param <T> mark type.
+     * @return number of added marks.
+     */
+    public static <T> int getMarksOf(Entry<?> entry, Class<T> markClass, Collection<? super T> result) {
+        if (entry instanceof MarkQueries) {
+            return ((MarkQueries) entry).getMarksOf(markClass, result);
+        }
+        Collection<T> marks = entry.getMarksOf(markClass);
+        result.addAll(marks);
+        return marks.size();
+    }
+
+    /**
+     * Calls action for every mark of entry with that class. Action should not add or remove marks.
+     * @param entry entry
+     * @param markClass mark class to find.
+     * @param action action to perform.
+     * @param <T> mark type.
+     * @return number of found marks.
+     */
+    public static <T> int foreachMarkOf(Entry<?> entry, Class<T> markClass, Procedure<? super T> action) {
+        if (entry instanceof MarkQueries) {
+            return ((MarkQueries) entry).foreachMarkOf(markClass, action);
+        }
+        Collection<T> marks = entry.getMarksOf(markClass);
+        for (T mark : marks) {
+            action.perform(mark);
+        }
+        return marks.size();
+    }
+
+}
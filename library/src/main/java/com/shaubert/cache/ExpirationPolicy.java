@@ -0,0 +1,103 @@
+package com.shaubert.cache;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time based expiration of {@link com.shaubert.cache.Entry Entry} value. When value is expired entry is marked with
+ * {@link Entry#DIRTY_MARK Entry.DIRTY_MARK} on next {@link Entry#getValue() Entry.getValue()} call.
+ * Value itself is kept, so you can show it while fresh data is loading.
+ * <p>
+ * Register policy for data class with
+ * {@link DefaultEntryFactory#setExpirationPolicy(Class, ExpirationPolicy) DefaultEntryFactory.setExpirationPolicy()}.
+ */
+public final class ExpirationPolicy {
+
+    /**
+     * Deadline of value that never expires.
+     */
+    static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    /**
+     * Durations of this length or longer are treated as infinite, so deadlines don't overflow.
+     */
+    private static final long MAX_DURATION_NANOS = Long.MAX_VALUE / 2;
+
+    private final long expireAfterWriteNanos;
+    private final long expireAfterAccessNanos;
+
+    /**
+     * @param expireAfterWrite value expires after that time since last {@link Entry#setValue(Object) Entry.setValue()},
+     *                         0 to disable. Durations longer than about 146 years are treated as infinite.
+     * @param expireAfterAccess value expires after that time since last {@link Entry#getValue() Entry.getValue()}
+     *                          or {@link Entry#setValue(Object) Entry.setValue()}, 0 to disable
+     * @param unit time unit of durations
+     */
+    public ExpirationPolicy(long expireAfterWrite, long expireAfterAccess, TimeUnit unit) {
+        if (expireAfterWrite < 0 || expireAfterAccess < 0) {
+            throw new IllegalArgumentException("expiration time should not be negative");
+        }
+        if (expireAfterWrite == 0 && expireAfterAccess == 0) {
+            throw new IllegalArgumentException("provide expireAfterWrite or expireAfterAccess");
+        }
+        this.expireAfterWriteNanos = toNanos(expireAfterWrite, unit);
+        this.expireAfterAccessNanos = toNanos(expireAfterAccess, unit);
+    }
+
+    /**
+     * @return duration in nanoseconds or 0 if duration is too long to expire
+     */
+    private static long toNanos(long duration, TimeUnit unit) {
+        long nanos = unit.toNanos(duration);
+        return nanos < MAX_DURATION_NANOS ? nanos : 0;
+    }
+
+    public static ExpirationPolicy afterWrite(long duration, TimeUnit unit) {
+        return new ExpirationPolicy(duration, 0, unit);
+    }
+
+    public static ExpirationPolicy afterAccess(long duration, TimeUnit unit) {
+        return new ExpirationPolicy(0, duration, unit);
+    }
+
+    boolean expiresAfterAccess() {
+        return expireAfterAccessNanos > 0;
+    }
+
+    static long now() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Compares times as differences, so result is correct when {@link System#nanoTime()} overflows.
+     * @param now time from {@link #now()}
+     * @param deadline deadline or {@link #NO_DEADLINE}
+     * @return true if deadline is reached
+     */
+    static boolean isExpired(long now, long deadline) {
+        return deadline != NO_DEADLINE && now - deadline >= 0;
+    }
+
+    /**
+     * @param writeTime time of value write from {@link #now()}
+     * @return deadline of value written at writeTime or {@link #NO_DEADLINE}
+     */
+    long getWriteDeadline(long writeTime) {
+        return expireAfterWriteNanos > 0 ? writeTime + expireAfterWriteNanos : NO_DEADLINE;
+    }
+
+    /**
+     * @param accessTime time of value access from {@link #now()}
+     * @param writeDeadline result of {@link #getWriteDeadline(long)} for current value
+     * @return deadline of value accessed at accessTime or {@link #NO_DEADLINE}
+     */
+    long getDeadline(long accessTime, long writeDeadline) {
+        if (expireAfterAccessNanos > 0) {
+            long accessDeadline = accessTime + expireAfterAccessNanos;
+            if (writeDeadline == NO_DEADLINE || accessDeadline - writeDeadline < 0) {
+                return accessDeadline;
+            }
+        }
+        return writeDeadline;
+    }
+
+}
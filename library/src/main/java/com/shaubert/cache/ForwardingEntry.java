@@ -0,0 +1,128 @@
+package com.shaubert.cache;
+
+import java.util.Collection;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link com.shaubert.cache.Entry Entry} that forwards all calls to another entry.
+ * Extend it to add behaviour to existing entry. Listeners receive this entry as changed entry, changes of
+ * delegate are delivered if delegate is {@link com.shaubert.cache.ObservableEntry ObservableEntry}.
+ */
+public abstract class ForwardingEntry<DATA> implements ObservableEntry<DATA>, MarkQueries {
+
+    private final Entry<DATA> delegate;
+    private final EntryListeners listeners = new EntryListeners();
+
+    protected ForwardingEntry(Entry<DATA> delegate) {
+        this.delegate = delegate;
+        EntryListeners.listen(delegate, new EntryListener() {
+            @Override
+            public void onEntryChanged(Entry<?> entry, int changes) {
+                notifyChanged(changes);
+            }
+        }, null);
+    }
+
+    /**
+     * Notify listeners of this entry.
+     * @param changes {@link com.shaubert.cache.EntryListener EntryListener} change flags
+     */
+    protected void notifyChanged(int changes) {
+        listeners.notifyChanged(this, changes);
+    }
+
+    public Entry<DATA> getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public String getKey() {
+        return delegate.getKey();
+    }
+
+    @Override
+    public Class<DATA> getDataClass() {
+        return delegate.getDataClass();
+    }
+
+    @Override
+    public DATA getValue() {
+        return delegate.getValue();
+    }
+
+    @Override
+    public void setValue(DATA value) {
+        delegate.setValue(value);
+    }
+
+    @Override
+    public boolean hasValue() {
+        return delegate.hasValue();
+    }
+
+    @Override
+    public boolean addMark(Object mark) {
+        return delegate.addMark(mark);
+    }
+
+    @Override
+    public boolean removeMark(Object mark) {
+        return delegate.removeMark(mark);
+    }
+
+    @Override
+    public boolean hasMark(Object mark) {
+        return delegate.hasMark(mark);
+    }
+
+    @Override
+    public boolean hasMarkOf(Class<?> markClass) {
+        return delegate.hasMarkOf(markClass);
+    }
+
+    @Override
+    public Collection<Object> getMarks() {
+        return delegate.getMarks();
+    }
+
+    @Override
+    public boolean hasMarks() {
+        return delegate.hasMarks();
+    }
+
+    @Override
+    public <T> T getMarkOf(Class<T> markClass) {
+        return delegate.getMarkOf(markClass);
+    }
+
+    @Override
+    public <T> Collection<T> getMarksOf(Class<T> markClass) {
+        return delegate.getMarksOf(markClass);
+    }
+
+    @Override
+    public <T> int getMarksOf(Class<T> markClass, Collection<? super T> result) {
+        return EntryMarks.getMarksOf(delegate, markClass, result);
+    }
+
+    @Override
+    public <T> int foreachMarkOf(Class<T> markClass, Procedure<? super T> action) {
+        return EntryMarks.foreachMarkOf(delegate, markClass, action);
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+    }
+
+    @Override
+    public void addListener(EntryListener listener, Executor executor) {
+        listeners.add(listener, executor);
+    }
+
+    @Override
+    public void removeListener(EntryListener listener) {
+        listeners.remove(listener);
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.shaubert.cache;
+
+/**
+ * Count-min sketch estimating access frequency of keys (TinyLFU). Counters are limited by 15 and halved
+ * after {@code 10 * width} increments, so frequency of keys that are not accessed anymore decays.
+ * Thread-safe.
+ */
+class FrequencySketch {
+
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = {0x97cb3127, 0xb3c4e5fb, 0x9e3779b9, 0x7f4a7c15};
+
+    private final byte[][] counters;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * @param expectedKeys expected number of distinct keys
+     */
+    FrequencySketch(int expectedKeys) {
+        int width = Integer.highestOneBit(Math.max(16, Math.min(expectedKeys, 1 << 20)) - 1) << 1;
+        counters = new byte[DEPTH][width];
+        mask = width - 1;
+        sampleSize = width * 10;
+    }
+
+    synchronized void increment(String key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < DEPTH; i++) {
+            byte[] row = counters[i];
+            int index = index(hash, i);
+            if (row[index] < MAX_COUNT) {
+                row[index]++;
+                added = true;
+            }
+        }
+
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    synchronized int frequency(String key) {
+        int hash = spread(key.hashCode());
+        int result = MAX_COUNT;
+        for (int i = 0; i < DEPTH; i++) {
+            result = Math.min(result, counters[i][index(hash, i)]);
+        }
+        return result;
+    }
+
+    private void reset() {
+        for (byte[] row : counters) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] >>= 1;
+            }
+        }
+        additions /= 2;
+    }
+
+    private int index(int hash, int row) {
+        int h = (hash + SEEDS[row]) * SEEDS[row];
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static int spread(int hash) {
+        hash ^= hash >>> 17;
+        hash *= 0xed5ad4bb;
+        return hash ^ (hash >>> 11);
+    }
+
+}
@@ -0,0 +1,18 @@
+package com.shaubert.cache;
+
+/**
+ * {@link com.shaubert.cache.EntryFactory EntryFactory} that accepts already known
+ * {@link EntryKeyFactory.KeyParams KeyParams} of the key, so key doesn't have to be parsed back.
+ * Caches pass params when entry is requested by data class and qualifier.
+ */
+public interface KeyParamsEntryFactory extends EntryFactory {
+
+    /**
+     * @param key entry key
+     * @param keyParams parameters of the key
+     * @param <T> data type
+     * @return created entry
+     */
+    <T> Entry<T> createEntry(String key, EntryKeyFactory.KeyParams keyParams);
+
+}
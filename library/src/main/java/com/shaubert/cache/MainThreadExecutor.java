@@ -0,0 +1,21 @@
+package com.shaubert.cache;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Executor that posts tasks to main thread. Tasks are always posted, even if
+ * {@link #execute(Runnable) execute()} is called on main thread.
+ */
+public class MainThreadExecutor implements Executor {
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    @Override
+    public void execute(Runnable command) {
+        handler.post(command);
+    }
+
+}
@@ -0,0 +1,29 @@
+package com.shaubert.cache;
+
+import java.util.Collection;
+
+/**
+ * Allocation free queries of {@link com.shaubert.cache.Entry Entry} marks. Entries of this library implement it,
+ * use {@link com.shaubert.cache.EntryMarks EntryMarks} to query any entry.
+ */
+public interface MarkQueries {
+
+    /**
+     * Adds marks with that class to provided collection, so collection can be reused between calls.
+     * @param markClass mark class to find.
+     * @param result collection to add marks to.
+     * @param <T> mark type.
+     * @return number of added marks.
+     */
+    <T> int getMarksOf(Class<T> markClass, Collection<? super T> result);
+
+    /**
+     * Calls action for every mark with that class. Action should not add or remove marks.
+     * @param markClass mark class to find.
+     * @param action action to perform.
+     * @param <T> mark type.
+     * @return number of found marks.
+     */
+    <T> int foreachMarkOf(Class<T> markClass, Procedure<? super T> action);
+
+}
@@ -0,0 +1,276 @@
+package com.shaubert.cache;
+
+import java.lang.reflect.Modifier;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Set of entry marks. Built-in {@link Entry#DIRTY_MARK DIRTY_MARK}, {@link Entry#FAILURE_MARK FAILURE_MARK} and
+ * {@link Entry#UPDATING_MARK UPDATING_MARK} are stored as bit flags, other marks are indexed by class, so typed
+ * queries don't check every mark. Queries don't allocate, except {@link #iterator()}. Not thread-safe.
+ */
+class Marks extends AbstractCollection<Object> {
+
+    private static final int DIRTY = 1;
+    private static final int FAILURE = 1 << 1;
+    private static final int UPDATING = 1 << 2;
+
+    private static final Object[] BUILT_IN_MARKS = {Entry.DIRTY_MARK, Entry.FAILURE_MARK, Entry.UPDATING_MARK};
+
+    private int flags;
+
+    /**
+     * Classes of other marks in order of addition, to iterate without iterators.
+     */
+    private final ArrayList<Class<?>> classes = new ArrayList<>(2);
+    private final HashMap<Class<?>, ArrayList<Object>> byClass = new HashMap<>(4);
+    private int size;
+
+    private static int flagOf(Object mark) {
+        if (mark == Entry.DIRTY_MARK) return DIRTY;
+        if (mark == Entry.FAILURE_MARK) return FAILURE;
+        if (mark == Entry.UPDATING_MARK) return UPDATING;
+        return 0;
+    }
+
+    private static int flagOf(Class<?> markClass) {
+        if (markClass == DirtyMark.class) return DIRTY;
+        if (markClass == FailureMark.class) return FAILURE;
+        if (markClass == UpdatingMark.class) return UPDATING;
+        return 0;
+    }
+
+    @Override
+    public boolean add(Object mark) {
+        int flag = flagOf(mark);
+        if (flag != 0) {
+            if ((flags & flag) != 0) return false;
+            flags |= flag;
+            size++;
+            return true;
+        }
+
+        Class<?> markClass = mark.getClass();
+        ArrayList<Object> marks = byClass.get(markClass);
+        if (marks == null) {
+            marks = new ArrayList<>(1);
+            byClass.put(markClass, marks);
+            classes.add(markClass);
+        } else if (marks.contains(mark)) {
+            return false;
+        }
+        marks.add(mark);
+        size++;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object mark) {
+        if (mark == null) return false;
+
+        int flag = flagOf(mark);
+        if (flag != 0) {
+            if ((flags & flag) == 0) return false;
+            flags &= ~flag;
+            size--;
+            return true;
+        }
+
+        Class<?> markClass = mark.getClass();
+        ArrayList<Object> marks = byClass.get(markClass);
+        if (marks == null || !marks.remove(mark)) return false;
+        if (marks.isEmpty()) {
+            byClass.remove(markClass);
+            classes.remove(markClass);
+        }
+        size--;
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object mark) {
+        if (mark == null) return false;
+
+        int flag = flagOf(mark);
+        if (flag != 0) {
+            return (flags & flag) != 0;
+        }
+        ArrayList<Object> marks = byClass.get(mark.getClass());
+        return marks != null && marks.contains(mark);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void clear() {
+        flags = 0;
+        classes.clear();
+        byClass.clear();
+        size = 0;
+    }
+
+    boolean containsOf(Class<?> markClass) {
+        return findOf(markClass) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T findOf(Class<T> markClass) {
+        if (markClass == null || size == 0) return null;
+
+        int flag = flagOf(markClass);
+        if (flag != 0) {
+            return (flags & flag) != 0 ? (T) BUILT_IN_MARKS[Integer.numberOfTrailingZeros(flag)] : null;
+        }
+
+        ArrayList<Object> marks = byClass.get(markClass);
+        if (marks != null) {
+            return (T) marks.get(0);
+        }
+        if (Modifier.isFinal(markClass.getModifiers())) {
+            return null;
+        }
+
+        for (int i = 0; i < BUILT_IN_MARKS.length; i++) {
+            if ((flags & (1 << i)) != 0 && markClass.isInstance(BUILT_IN_MARKS[i])) {
+                return (T) BUILT_IN_MARKS[i];
+            }
+        }
+        for (int i = 0; i < classes.size(); i++) {
+            Class<?> cls = classes.get(i);
+            if (markClass.isAssignableFrom(cls)) {
+                return (T) byClass.get(cls).get(0);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Calls action for every mark of class, marks should not be added or removed by action.
+     * @return number of marks passed to action
+     */
+    @SuppressWarnings("unchecked")
+    <T> int foreachOf(Class<T> markClass, Procedure<? super T> action) {
+        if (markClass == null || size == 0) return 0;
+
+        int count = 0;
+        int flag = flagOf(markClass);
+        if (flag != 0) {
+            if ((flags & flag) != 0) {
+                action.perform((T) BUILT_IN_MARKS[Integer.numberOfTrailingZeros(flag)]);
+                count++;
+            }
+            return count;
+        }
+
+        for (int i = 0; i < BUILT_IN_MARKS.length; i++) {
+            if ((flags & (1 << i)) != 0 && markClass.isInstance(BUILT_IN_MARKS[i])) {
+                action.perform((T) BUILT_IN_MARKS[i]);
+                count++;
+            }
+        }
+        if (Modifier.isFinal(markClass.getModifiers())) {
+            ArrayList<Object> marks = byClass.get(markClass);
+            return marks != null ? count + perform(marks, action) : count;
+        }
+        for (int i = 0; i < classes.size(); i++) {
+            Class<?> cls = classes.get(i);
+            if (markClass.isAssignableFrom(cls)) {
+                count += perform(byClass.get(cls), action);
+            }
+        }
+        return count;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> int perform(ArrayList<Object> marks, Procedure<? super T> action) {
+        for (int i = 0; i < marks.size(); i++) {
+            action.perform((T) marks.get(i));
+        }
+        return marks.size();
+    }
+
+    /**
+     * Adds marks of class to result.
+     * @return number of marks added
+     */
+    @SuppressWarnings("unchecked")
+    <T> int collectOf(Class<T> markClass, Collection<? super T> result) {
+        if (markClass == null || size == 0) return 0;
+
+        int count = 0;
+        int flag = flagOf(markClass);
+        if (flag != 0) {
+            if ((flags & flag) != 0 && result.add((T) BUILT_IN_MARKS[Integer.numberOfTrailingZeros(flag)])) {
+                count++;
+            }
+            return count;
+        }
+
+        for (int i = 0; i < BUILT_IN_MARKS.length; i++) {
+            if ((flags & (1 << i)) != 0 && markClass.isInstance(BUILT_IN_MARKS[i])
+                    && result.add((T) BUILT_IN_MARKS[i])) {
+                count++;
+            }
+        }
+        for (int i = 0; i < classes.size(); i++) {
+            Class<?> cls = classes.get(i);
+            if (markClass.isAssignableFrom(cls)) {
+                ArrayList<Object> marks = byClass.get(cls);
+                for (int j = 0; j < marks.size(); j++) {
+                    if (result.add((T) marks.get(j))) count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public Iterator<Object> iterator() {
+        return new Iterator<Object>() {
+            private int builtIn;
+            private int classIndex;
+            private int markIndex;
+
+            @Override
+            public boolean hasNext() {
+                while (builtIn < BUILT_IN_MARKS.length) {
+                    if ((flags & (1 << builtIn)) != 0) return true;
+                    builtIn++;
+                }
+                while (classIndex < classes.size()) {
+                    if (markIndex < byClass.get(classes.get(classIndex)).size()) return true;
+                    classIndex++;
+                    markIndex = 0;
+                }
+                return false;
+            }
+
+            @Override
+            public Object next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                if (builtIn < BUILT_IN_MARKS.length) {
+                    return BUILT_IN_MARKS[builtIn++];
+                }
+                return byClass.get(classes.get(classIndex)).get(markIndex++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+}
@@ -8,7 +8,9 @@ public interface MergeableData<T> {
 
     /**
      * NOTE: do not modify current object! It may lead to undetermined results
-     * in asynchronous save operations in {@link com.shaubert.cache.persistance.DataStorage DataStorage}
+     * in asynchronous save operations in {@link com.shaubert.cache.persistance.DataStorage DataStorage},
+     * especially for classes with {@link com.shaubert.cache.persistance.PersistableData#immutable()
+     * PersistableData.immutable()} that are serialized in background.
      * @param newData newData to merge with
      * @return new merged data object or newData parameter or current object
      */
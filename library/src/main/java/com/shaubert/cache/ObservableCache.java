@@ -0,0 +1,26 @@
+package com.shaubert.cache;
+
+import java.util.concurrent.Executor;
+
+/**
+ * {@link com.shaubert.cache.Cache Cache} that notifies listeners about changes of its entries. Only changes of
+ * entries implementing {@link com.shaubert.cache.ObservableEntry ObservableEntry} are delivered.
+ */
+public interface ObservableCache extends Cache {
+
+    /**
+     * Register listener of changes of every {@link com.shaubert.cache.Entry Entry} in cache.
+     * @param listener listener
+     * @param executor executor to call listener on, for example {@link com.shaubert.cache.MainThreadExecutor
+     *                 MainThreadExecutor}. Changes are coalesced per entry until listener is called.
+     *                 Pass null to call listener synchronously on every change.
+     */
+    void addListener(EntryListener listener, Executor executor);
+
+    /**
+     * Unregister listener of entries changes.
+     * @param listener listener
+     */
+    void removeListener(EntryListener listener);
+
+}
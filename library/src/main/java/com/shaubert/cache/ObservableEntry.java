@@ -0,0 +1,26 @@
+package com.shaubert.cache;
+
+import java.util.concurrent.Executor;
+
+/**
+ * {@link com.shaubert.cache.Entry Entry} that notifies listeners about its changes. Entries of this library
+ * implement it, check entry with {@code instanceof} if it's created by your own factory.
+ */
+public interface ObservableEntry<DATA> extends Entry<DATA> {
+
+    /**
+     * Register listener of entry changes.
+     * @param listener listener
+     * @param executor executor to call listener on, for example {@link com.shaubert.cache.MainThreadExecutor
+     *                 MainThreadExecutor}. Changes are coalesced until listener is called.
+     *                 Pass null to call listener synchronously on every change.
+     */
+    void addListener(EntryListener listener, Executor executor);
+
+    /**
+     * Unregister listener of entry changes.
+     * @param listener listener
+     */
+    void removeListener(EntryListener listener);
+
+}
@@ -0,0 +1,66 @@
+package com.shaubert.cache;
+
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+
+/**
+ * {@link com.shaubert.cache.DefaultEntry DefaultEntry} that holds value with soft or weak reference,
+ * so value may be collected by garbage collector. After that entry behaves like it has no value.
+ * Persistable entries reload collected value from storage on
+ * {@link AsyncEntry#getValue(DataCallback) AsyncEntry.getValue(DataCallback)}.
+ */
+public class ReferenceEntry<DATA> extends DefaultEntry<DATA> {
+
+    private final ReferenceType referenceType;
+    private Reference<DATA> valueReference;
+
+    public ReferenceEntry(String key, Class<DATA> dataClass, ReferenceType referenceType) {
+        this(key, dataClass, referenceType, null);
+    }
+
+    /**
+     * @param key entry key
+     * @param dataClass value class
+     * @param referenceType {@link ReferenceType#SOFT SOFT} or {@link ReferenceType#WEAK WEAK}
+     * @param expirationPolicy optional value expiration policy
+     */
+    public ReferenceEntry(String key, Class<DATA> dataClass, ReferenceType referenceType,
+                          ExpirationPolicy expirationPolicy) {
+        super(key, dataClass, expirationPolicy);
+        if (referenceType == ReferenceType.STRONG) {
+            throw new IllegalArgumentException("use DefaultEntry for strong references");
+        }
+        this.referenceType = referenceType;
+    }
+
+    @Override
+    protected DATA peekValue() {
+        Reference<DATA> reference = valueReference;
+        return reference != null ? reference.get() : null;
+    }
+
+    @Override
+    protected void storeValue(DATA value) {
+        if (value == null) {
+            valueReference = null;
+        } else if (referenceType == ReferenceType.SOFT) {
+            valueReference = new SoftReference<>(value);
+        } else {
+            valueReference = new WeakReference<>(value);
+        }
+    }
+
+    /**
+     * @return true if value was set but then collected by garbage collector
+     */
+    public boolean isValueCollected() {
+        Reference<DATA> reference = valueReference;
+        return reference != null && reference.get() == null;
+    }
+
+    public ReferenceType getReferenceType() {
+        return referenceType;
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.shaubert.cache;
+
+/**
+ * How {@link com.shaubert.cache.Entry Entry} holds its value.
+ * Use it with {@link DefaultEntryFactory#setReferenceType(Class, ReferenceType) DefaultEntryFactory.setReferenceType()}.
+ */
+public enum ReferenceType {
+    /**
+     * Value is held until it's replaced or entry is cleared.
+     */
+    STRONG,
+
+    /**
+     * Value is held with {@link java.lang.ref.SoftReference SoftReference}
+     * and may be collected on memory pressure.
+     */
+    SOFT,
+
+    /**
+     * Value is held with {@link java.lang.ref.WeakReference WeakReference}
+     * and may be collected as soon as nobody else references it.
+     */
+    WEAK
+}
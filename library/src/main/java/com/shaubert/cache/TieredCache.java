@@ -0,0 +1,419 @@
+package com.shaubert.cache;
+
+import com.shaubert.cache.persistance.DataStorage;
+import com.shaubert.cache.persistance.PersistableData;
+import com.shaubert.cache.persistance.StorageLoadCallback;
+import com.shaubert.cache.persistance.StorageSaveCallback;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link com.shaubert.cache.BoundedCache BoundedCache} with second tier in
+ * {@link com.shaubert.cache.persistance.DataStorage DataStorage}. Values of entries evicted from memory are saved
+ * to storage and are loaded back to memory on the next {@link #get(String) get()} of the key.
+ * <p>
+ * Disk tier is limited by number of entries. When it's full, evicted entry is saved only if its key is accessed
+ * more frequently than the key of least recently spilled entry (TinyLFU admission), so keys accessed once
+ * don't push out frequently used keys.
+ * <p>
+ * Only entries of classes without {@link com.shaubert.cache.persistance.PersistableData PersistableData}
+ * annotation are spilled, persistable entries are stored by their own storage. Promoted entry is marked
+ * with {@link Entry#UPDATING_MARK UPDATING_MARK} until its value is loaded, listen for
+ * {@link EntryListener#VALUE_CHANGED VALUE_CHANGED} to get it. If key is requested while its value is
+ * still being saved, value is returned to new entry immediately and saved file is deleted after save.
+ * Entry evicted before its value is loaded doesn't receive the value, key is returned to disk tier instead.
+ * <p>
+ * {@link #clear(Function) clear(filter)} is applied to entries in memory only, {@link #clear()} clears
+ * both tiers. Index of disk tier is kept in memory only, so use separate storage for disk tier and clear it
+ * on start (for example with storage version) or limit its size.
+ * <p>
+ * To limit disk tier in bytes use storage with size limit, for example
+ * {@link com.shaubert.cache.persistance.FileStorage.Builder#maxBytes(long) FileStorage.Builder.maxBytes()}.
+ * Entries which files are evicted by storage are promoted without value.
+ */
+public class TieredCache extends BoundedCache {
+
+    private final DataStorage diskStorage;
+    private final int maxDiskEntries;
+    private final FrequencySketch sketch;
+
+    /**
+     * Keys and data classes of spilled entries, least recently spilled first.
+     */
+    private final LinkedHashMap<String, Class<?>> diskEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Spills which are not saved yet. Guarded by diskEntries.
+     */
+    private final Map<String, Spill> spills = new HashMap<>();
+
+    /**
+     * Keys of created entries which values should be loaded from disk. Guarded by diskEntries.
+     */
+    private final Set<String> promotions = new HashSet<>();
+
+    /**
+     * Promoted entries which values are being loaded from disk. Entry is removed when it's evicted,
+     * so disk copy of its value is kept. Guarded by diskEntries.
+     */
+    private final Map<String, Entry<?>> loading = new HashMap<>();
+
+    protected TieredCache(Builder builder) {
+        super(builder.memoryBuilder);
+        this.diskStorage = builder.diskStorage;
+        this.maxDiskEntries = builder.maxDiskEntries;
+
+        //frequencies are compared for disk tier candidates, so sketch is sized by disk tier
+        long expectedKeys = (long) builder.memoryBuilder.getMaxEntries() + maxDiskEntries;
+        this.sketch = new FrequencySketch((int) Math.min(expectedKeys, maxDiskEntries * 4L));
+    }
+
+    public static Builder newBuilder(EntryKeyFactory keyFactory, EntryFactory entryFactory, DataStorage diskStorage) {
+        return new Builder(keyFactory, entryFactory, diskStorage);
+    }
+
+    @Override
+    public <T> Entry<T> get(String entryKey) {
+        sketch.increment(entryKey);
+        return super.get(entryKey);
+    }
+
+    @Override
+    public <T> Entry<T> get(Class<T> cls, String qualifier) {
+        return get(getCacheKey(cls, qualifier));
+    }
+
+    @Override
+    protected <T> Entry<T> createEntry(String key) {
+        Entry<T> entry = super.createEntry(key);
+
+        Class<?> diskClass;
+        Spill spill;
+        boolean load = false;
+        synchronized (diskEntries) {
+            diskClass = diskEntries.remove(key);
+            spill = spills.get(key);
+            if (spill != null) {
+                //file will be deleted when save is finished
+                spill.dropped = true;
+            } else if (diskClass == entry.getDataClass()) {
+                promotions.add(key);
+                load = true;
+            }
+        }
+
+        if (spill != null && diskClass == entry.getDataClass()) {
+            //entry is not visible to anybody yet, so value is set without notifications
+            setSpilledValue(entry, spill.value);
+        } else if (load) {
+            //mark is added before cache starts to listen for the entry, loading is started in onEntryCreated()
+            entry.addMark(Entry.UPDATING_MARK);
+        } else if (diskClass != null && spill == null) {
+            diskStorage.delete(diskClass, key);
+        }
+        return entry;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void setSpilledValue(Entry<T> entry, Object value) {
+        if (!entry.hasValue()) {
+            entry.setValue((T) value);
+        }
+    }
+
+    @Override
+    protected void onEntryCreated(Entry<?> entry) {
+        super.onEntryCreated(entry);
+
+        boolean load;
+        synchronized (diskEntries) {
+            load = promotions.remove(entry.getKey());
+            if (load) {
+                loading.put(entry.getKey(), entry);
+            }
+        }
+        if (load) {
+            promote(entry);
+        }
+    }
+
+    private <T> void promote(final Entry<T> entry) {
+        diskStorage.load(entry.getDataClass(), entry.getKey(), new StorageLoadCallback<T>() {
+            @Override
+            public void onSuccess(T data) {
+                //value of evicted entry stays in disk tier
+                if (isLoading(entry) && !entry.hasValue()) {
+                    entry.setValue(data);
+                }
+                finishPromotion(entry);
+            }
+
+            @Override
+            public void onEmptyResult() {
+                finishPromotion(entry);
+            }
+
+            @Override
+            public void onError() {
+                finishPromotion(entry);
+            }
+        });
+    }
+
+    private boolean isLoading(Entry<?> entry) {
+        synchronized (diskEntries) {
+            return loading.get(entry.getKey()) == entry;
+        }
+    }
+
+    private void finishPromotion(Entry<?> entry) {
+        entry.removeMark(Entry.UPDATING_MARK);
+
+        String key = entry.getKey();
+        boolean delete;
+        synchronized (diskEntries) {
+            if (loading.get(key) == entry) {
+                loading.remove(key);
+            }
+            //file is needed if key is spilled again or another entry of the key is loading it
+            delete = !diskEntries.containsKey(key) && !loading.containsKey(key) && !promotions.contains(key);
+        }
+        if (delete) {
+            diskStorage.delete(entry.getDataClass(), key);
+        }
+    }
+
+    @Override
+    protected void onEntryEvicted(Entry<?> entry) {
+        super.onEntryEvicted(entry);
+        spill(entry);
+    }
+
+    private <T> void spill(Entry<T> entry) {
+        if (restorePromotion(entry)) return;
+
+        if (!entry.hasValue()
+                || entry.hasMark(Entry.DIRTY_MARK)
+                || entry.getDataClass().isAnnotationPresent(PersistableData.class)) {
+            return;
+        }
+        T value = entry.getValue();
+        if (value == null) return;
+
+        final String key = entry.getKey();
+        final Class<T> dataClass = entry.getDataClass();
+        String victimKey = null;
+        Class<?> victimClass = null;
+        final Spill spill;
+        synchronized (diskEntries) {
+            if (!diskEntries.containsKey(key) && diskEntries.size() >= maxDiskEntries) {
+                Map.Entry<String, Class<?>> eldest = diskEntries.entrySet().iterator().next();
+                if (sketch.frequency(key) <= sketch.frequency(eldest.getKey())) {
+                    return;
+                }
+                victimKey = eldest.getKey();
+                victimClass = eldest.getValue();
+                diskEntries.remove(victimKey);
+                if (drop(victimKey)) {
+                    victimKey = null;
+                }
+            }
+            diskEntries.put(key, dataClass);
+            spill = new Spill(value);
+            spills.put(key, spill);
+        }
+
+        if (victimKey != null) {
+            diskStorage.delete(victimClass, victimKey);
+        }
+        diskStorage.save(value, key, new StorageSaveCallback<T>() {
+            @Override
+            public void onSuccess() {
+                onSpillFinished(key, dataClass, spill, true);
+            }
+
+            @Override
+            public void onError() {
+                onSpillFinished(key, dataClass, spill, false);
+            }
+        });
+    }
+
+    /**
+     * Returns key of promoted entry that is evicted before its value is loaded to disk tier. File of the key
+     * is not deleted until promotion is finished, so value is not saved again.
+     * @return true if key is returned to disk tier
+     */
+    private boolean restorePromotion(Entry<?> entry) {
+        String key = entry.getKey();
+        String victimKey = null;
+        Class<?> victimClass = null;
+        synchronized (diskEntries) {
+            if (loading.get(key) != entry) return false;
+
+            loading.remove(key);
+            //value is already loaded, it's spilled as usual
+            if (entry.hasValue()) return false;
+
+            if (!diskEntries.containsKey(key) && diskEntries.size() >= maxDiskEntries) {
+                //key was admitted before, so it replaces least recently spilled key without frequency check
+                Map.Entry<String, Class<?>> eldest = diskEntries.entrySet().iterator().next();
+                victimKey = eldest.getKey();
+                victimClass = eldest.getValue();
+                diskEntries.remove(victimKey);
+                if (drop(victimKey)) {
+                    victimKey = null;
+                }
+            }
+            diskEntries.put(key, entry.getDataClass());
+        }
+
+        if (victimKey != null) {
+            diskStorage.delete(victimClass, victimKey);
+        }
+        return true;
+    }
+
+    /**
+     * Marks spill of the key that is being saved as not needed. Called under diskEntries lock.
+     * @return true if save of the key is in progress and its file will be deleted after save
+     */
+    private boolean drop(String key) {
+        Spill spill = spills.get(key);
+        if (spill != null) {
+            spill.dropped = true;
+            return true;
+        }
+        return false;
+    }
+
+    private void onSpillFinished(String key, Class<?> dataClass, Spill spill, boolean saved) {
+        boolean delete;
+        synchronized (diskEntries) {
+            if (spills.get(key) == spill) {
+                spills.remove(key);
+                if (!saved && !spill.dropped) {
+                    diskEntries.remove(key);
+                }
+            }
+            //file is not needed anymore unless key was spilled again
+            delete = saved && spill.dropped && !diskEntries.containsKey(key);
+        }
+        if (delete) {
+            diskStorage.delete(dataClass, key);
+        }
+    }
+
+    /**
+     * @return number of entries in disk tier
+     */
+    public int diskSize() {
+        synchronized (diskEntries) {
+            return diskEntries.size();
+        }
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+
+        Map<String, Class<?>> spilled;
+        synchronized (diskEntries) {
+            spilled = new HashMap<>(diskEntries);
+            diskEntries.clear();
+            //files of loading keys are deleted when loading is finished
+            loading.clear();
+            for (String key : spills.keySet()) {
+                //files of these keys are deleted after save
+                drop(key);
+                spilled.remove(key);
+            }
+        }
+        for (Map.Entry<String, Class<?>> entry : spilled.entrySet()) {
+            diskStorage.delete(entry.getValue(), entry.getKey());
+        }
+    }
+
+    /**
+     * Value that is being saved to disk tier.
+     */
+    private static class Spill {
+        final Object value;
+        /**
+         * Key was promoted or removed from disk tier before save was finished, file should be deleted after save.
+         */
+        boolean dropped;
+
+        Spill(Object value) {
+            this.value = value;
+        }
+    }
+
+    public static final class Builder {
+        private final BoundedCache.Builder memoryBuilder;
+        private final DataStorage diskStorage;
+        private int maxDiskEntries = -1;
+
+        private Builder(EntryKeyFactory keyFactory, EntryFactory entryFactory, DataStorage diskStorage) {
+            this.memoryBuilder = BoundedCache.newBuilder(keyFactory, entryFactory);
+            this.diskStorage = diskStorage;
+        }
+
+        /**
+         * @param maxEntries max number of entries in memory
+         * @return this
+         */
+        public Builder maxEntries(int maxEntries) {
+            memoryBuilder.maxEntries(maxEntries);
+            return this;
+        }
+
+        /**
+         * @param maxWeight max total weight of entries in memory. Requires {@link #weigher(Weigher) weigher}.
+         * @return this
+         */
+        public Builder maxWeight(long maxWeight) {
+            memoryBuilder.maxWeight(maxWeight);
+            return this;
+        }
+
+        /**
+         * @param weigher calculates weight of entries
+         * @return this
+         */
+        public Builder weigher(Weigher weigher) {
+            memoryBuilder.weigher(weigher);
+            return this;
+        }
+
+        /**
+         * @param maxDiskEntries max number of entries in disk tier
+         * @return this
+         */
+        public Builder maxDiskEntries(int maxDiskEntries) {
+            if (maxDiskEntries <= 0) throw new IllegalArgumentException("maxDiskEntries should be positive");
+            this.maxDiskEntries = maxDiskEntries;
+            return this;
+        }
+
+        /**
+         * Build cache or throw exception if limits are not set
+         * @return created cache
+         */
+        public TieredCache build() {
+            memoryBuilder.validate();
+            if (diskStorage == null) {
+                throw new IllegalArgumentException("provide disk storage");
+            }
+            if (maxDiskEntries == -1) {
+                throw new IllegalArgumentException("provide maxDiskEntries");
+            }
+            return new TieredCache(this);
+        }
+    }
+
+}
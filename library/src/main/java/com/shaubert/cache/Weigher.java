@@ -0,0 +1,17 @@
+package com.shaubert.cache;
+
+/**
+ * Calculates weight of cache {@link com.shaubert.cache.Entry Entry} for
+ * {@link com.shaubert.cache.BoundedCache BoundedCache}.
+ */
+public interface Weigher {
+
+    /**
+     * Weight usually depends on {@link Entry#getValue() Entry.getValue()}, for example size of cached list.
+     * Entry without value should have small weight as it may be still loading from storage.
+     * @param entry cache entry
+     * @return not negative weight of entry
+     */
+    int weigh(Entry<?> entry);
+
+}
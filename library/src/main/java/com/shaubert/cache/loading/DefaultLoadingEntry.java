@@ -0,0 +1,233 @@
+package com.shaubert.cache.loading;
+
+import com.shaubert.cache.AsyncEntry;
+import com.shaubert.cache.DataCallback;
+import com.shaubert.cache.Entry;
+import com.shaubert.cache.ForwardingEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link LoadingEntry} over existing {@link com.shaubert.cache.Entry Entry}.
+ */
+public class DefaultLoadingEntry<DATA> extends ForwardingEntry<DATA> implements LoadingEntry<DATA> {
+
+    static final long MIN_RETRY_DELAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    static final long MAX_RETRY_DELAY_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    private final EntryLoader<DATA> loader;
+    private final Executor resultExecutor;
+    private final boolean revalidateDirty;
+
+    private final Object lock = new Object();
+    private boolean loading;
+    private List<DataCallback<DATA>> waitingCallbacks = new ArrayList<>();
+    /**
+     * Delay between failed loading and the next revalidation, doubled on every failure. 0 if last loading
+     * succeeded. Guarded by lock.
+     */
+    private long retryDelay;
+    private long retryTime;
+
+    public DefaultLoadingEntry(Entry<DATA> entry, EntryLoader<DATA> loader, Executor resultExecutor) {
+        this(entry, loader, resultExecutor, false);
+    }
+
+    /**
+     * @param entry entry to load data for
+     * @param loader data loader
+     * @param resultExecutor optional executor to put loaded data to entry and call callbacks,
+     *                       if null loader callback thread is used
+     * @param revalidateDirty true to start loading in background when value of entry marked with
+     *                        {@link com.shaubert.cache.Entry#DIRTY_MARK DIRTY_MARK} is read. After failed
+     *                        loading revalidation is retried with backoff from 1 second to 5 minutes.
+     */
+    public DefaultLoadingEntry(Entry<DATA> entry, EntryLoader<DATA> loader, Executor resultExecutor,
+                               boolean revalidateDirty) {
+        super(entry);
+        this.loader = loader;
+        this.resultExecutor = resultExecutor;
+        this.revalidateDirty = revalidateDirty;
+    }
+
+    /**
+     * @return current value, stale value is returned if entry is marked with
+     * {@link com.shaubert.cache.Entry#DIRTY_MARK DIRTY_MARK}
+     */
+    @Override
+    public DATA getValue() {
+        DATA value = super.getValue();
+        revalidateIfDirty();
+        return value;
+    }
+
+    @Override
+    public void getValue(final DataCallback<DATA> callback) {
+        Entry<DATA> delegate = getDelegate();
+        if (delegate instanceof AsyncEntry) {
+            ((AsyncEntry<DATA>) delegate).getValue(new DataCallback<DATA>() {
+                @Override
+                public void onDataResult(DATA data) {
+                    revalidateIfDirty();
+                    callback.onDataResult(data);
+                }
+            });
+        } else {
+            callback.onDataResult(getValue());
+        }
+    }
+
+    /**
+     * Starts background loading if value is dirty. Entries with
+     * {@link com.shaubert.cache.Entry#FAILURE_MARK FAILURE_MARK} are revalidated only after retry delay,
+     * to not repeat failed loading on every read. Call {@link #load(DataCallback) load()} to retry immediately.
+     */
+    private void revalidateIfDirty() {
+        if (revalidateDirty
+                && hasMark(DIRTY_MARK)
+                && (!hasMark(FAILURE_MARK) || isRetryAllowed())
+                && !isLoading()) {
+            load(null);
+        }
+    }
+
+    private boolean isRetryAllowed() {
+        synchronized (lock) {
+            //failure mark added by somebody else is not retried
+            return retryDelay > 0 && now() - retryTime >= 0;
+        }
+    }
+
+    /**
+     * @return current time in nanoseconds, compared as differences
+     */
+    long now() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public void getOrLoad(final DataCallback<DATA> callback) {
+        getValue(new DataCallback<DATA>() {
+            @Override
+            public void onDataResult(DATA data) {
+                if (data != null) {
+                    callback.onDataResult(data);
+                } else {
+                    load(callback);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void load(DataCallback<DATA> callback) {
+        boolean start;
+        synchronized (lock) {
+            if (callback != null) {
+                waitingCallbacks.add(callback);
+            }
+            start = !loading;
+            loading = true;
+        }
+
+        if (start) {
+            addMark(UPDATING_MARK);
+            LoaderCallback loaderCallback = new LoaderCallback();
+            try {
+                loader.load(this, loaderCallback);
+            } catch (RuntimeException ex) {
+                //finish loading, so entry can be loaded again and callbacks don't wait forever
+                loaderCallback.onError();
+                throw ex;
+            }
+        }
+    }
+
+    @Override
+    public boolean isLoading() {
+        synchronized (lock) {
+            return loading;
+        }
+    }
+
+    /**
+     * @param data loaded data, null result keeps current value. Value is not cleared on empty result, because
+     *             for persistable entries it would clear value in memory only.
+     */
+    private void onLoaded(DATA data) {
+        if (data != null) {
+            setValue(data);
+        }
+        synchronized (lock) {
+            retryDelay = 0;
+        }
+        removeMark(FAILURE_MARK);
+        removeMark(DIRTY_MARK);
+        removeMark(UPDATING_MARK);
+        deliver(getValue());
+    }
+
+    private void onError() {
+        synchronized (lock) {
+            retryDelay = retryDelay == 0 ? MIN_RETRY_DELAY_NANOS : Math.min(retryDelay * 2, MAX_RETRY_DELAY_NANOS);
+            retryTime = now() + retryDelay;
+        }
+        addMark(FAILURE_MARK);
+        removeMark(UPDATING_MARK);
+        deliver(null);
+    }
+
+    private void deliver(DATA data) {
+        List<DataCallback<DATA>> callbacks;
+        synchronized (lock) {
+            loading = false;
+            callbacks = waitingCallbacks;
+            waitingCallbacks = new ArrayList<>();
+        }
+
+        for (DataCallback<DATA> callback : callbacks) {
+            callback.onDataResult(data);
+        }
+    }
+
+    private void runResult(Runnable runnable) {
+        if (resultExecutor != null) {
+            resultExecutor.execute(runnable);
+        } else {
+            runnable.run();
+        }
+    }
+
+    private class LoaderCallback implements EntryLoader.Callback<DATA> {
+        private final AtomicBoolean called = new AtomicBoolean();
+
+        @Override
+        public void onLoaded(final DATA data) {
+            if (!called.compareAndSet(false, true)) return;
+
+            runResult(new Runnable() {
+                @Override
+                public void run() {
+                    DefaultLoadingEntry.this.onLoaded(data);
+                }
+            });
+        }
+
+        @Override
+        public void onError() {
+            if (!called.compareAndSet(false, true)) return;
+
+            runResult(new Runnable() {
+                @Override
+                public void run() {
+                    DefaultLoadingEntry.this.onError();
+                }
+            });
+        }
+    }
+
+}
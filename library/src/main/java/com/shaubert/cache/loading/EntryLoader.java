@@ -0,0 +1,33 @@
+package com.shaubert.cache.loading;
+
+import com.shaubert.cache.Entry;
+
+/**
+ * Loads data for cache {@link com.shaubert.cache.Entry Entry}, for example from network.
+ * Register it with {@link LoadingEntryFactory#register(Class, EntryLoader) LoadingEntryFactory.register()}.
+ * @param <DATA> loaded data type
+ */
+public interface EntryLoader<DATA> {
+
+    /**
+     * Start loading. This method is not called again for the same entry until callback is invoked.
+     * @param entry entry to load data for, use it to get key or current value
+     * @param callback result callback, have to be called exactly once from any thread. If this method
+     *                 throws exception, loading is finished with error.
+     */
+    void load(Entry<DATA> entry, Callback<DATA> callback);
+
+    interface Callback<DATA> {
+        /**
+         * @param data loaded data or null if there is no new data. On null current value of entry is kept
+         *             and entry is considered up to date.
+         */
+        void onLoaded(DATA data);
+
+        /**
+         * Called if loading failed.
+         */
+        void onError();
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.shaubert.cache.loading;
+
+import com.shaubert.cache.AsyncEntry;
+import com.shaubert.cache.DataCallback;
+
+/**
+ * {@link com.shaubert.cache.Entry Entry} that can load its value with registered {@link EntryLoader}.
+ * Concurrent loads are coalesced: while loading is in progress new requests just wait for its result.
+ * While loading entry is marked with {@link com.shaubert.cache.Entry#UPDATING_MARK UPDATING_MARK}, if loading
+ * failed entry is marked with {@link com.shaubert.cache.Entry#FAILURE_MARK FAILURE_MARK}.
+ * @param <DATA> data type
+ */
+public interface LoadingEntry<DATA> extends AsyncEntry<DATA> {
+
+    /**
+     * Return value if entry has it (value from storage counts), load it otherwise.
+     * @param callback result callback, receives null if loading failed
+     */
+    void getOrLoad(DataCallback<DATA> callback);
+
+    /**
+     * Load value even if entry has it. If loading is already in progress no new loading will be started.
+     * Loaded data is put to entry with {@link #setValue(Object) setValue()}, so it's merged with current value
+     * if data is {@link com.shaubert.cache.MergeableData MergeableData}.
+     * @param callback optional result callback, receives null if loading failed
+     */
+    void load(DataCallback<DATA> callback);
+
+    /**
+     * @return true if loading is in progress
+     */
+    boolean isLoading();
+
+}
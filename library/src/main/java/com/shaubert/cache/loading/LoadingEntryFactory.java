@@ -0,0 +1,109 @@
+package com.shaubert.cache.loading;
+
+import com.shaubert.cache.Entry;
+import com.shaubert.cache.EntryFactory;
+import com.shaubert.cache.EntryKeyFactory;
+import com.shaubert.cache.KeyParamsEntryFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link com.shaubert.cache.EntryFactory EntryFactory} that creates {@link LoadingEntry} for data classes with
+ * registered {@link EntryLoader}. Other entries are created by wrapped factory as is.
+ * <p>
+ * Use it with {@link com.shaubert.cache.ConcurrentCache ConcurrentCache} to guarantee that only one
+ * {@link LoadingEntry} (and only one loading at a time) exists per key.
+ */
+public class LoadingEntryFactory implements KeyParamsEntryFactory {
+
+    private final EntryFactory entryFactory;
+    private final Executor resultExecutor;
+    private final ConcurrentMap<Class<?>, Registration<?>> loaders = new ConcurrentHashMap<>();
+
+    public LoadingEntryFactory(EntryFactory entryFactory) {
+        this(entryFactory, null);
+    }
+
+    /**
+     * @param entryFactory factory of entries to wrap
+     * @param resultExecutor optional executor to put loaded data to entries and call callbacks (for example main
+     *                       thread executor), if null loader callback thread is used
+     */
+    public LoadingEntryFactory(EntryFactory entryFactory, Executor resultExecutor) {
+        this.entryFactory = entryFactory;
+        this.resultExecutor = resultExecutor;
+    }
+
+    /**
+     * Register loader for data class. Affects only entries created after this call.
+     * @param dataClass data class
+     * @param loader loader of data
+     * @param <T> data type
+     */
+    public <T> void register(Class<T> dataClass, EntryLoader<T> loader) {
+        register(dataClass, loader, false);
+    }
+
+    /**
+     * Register loader for data class. Affects only entries created after this call.
+     * @param dataClass data class
+     * @param loader loader of data
+     * @param revalidateDirty true to use stale-while-revalidate reads: when value of entry marked with
+     *                        {@link com.shaubert.cache.Entry#DIRTY_MARK DIRTY_MARK} is read, stale value is
+     *                        returned immediately and loading is started in background.
+     *                        Works well with {@link com.shaubert.cache.ExpirationPolicy ExpirationPolicy}.
+     * @param <T> data type
+     */
+    public <T> void register(Class<T> dataClass, EntryLoader<T> loader, boolean revalidateDirty) {
+        loaders.put(dataClass, new Registration<>(loader, revalidateDirty));
+    }
+
+    public void unregister(Class<?> dataClass) {
+        loaders.remove(dataClass);
+    }
+
+    public <T> EntryLoader<T> getLoader(Class<T> dataClass) {
+        Registration<T> registration = getRegistration(dataClass);
+        return registration != null ? registration.loader : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Registration<T> getRegistration(Class<T> dataClass) {
+        return (Registration<T>) loaders.get(dataClass);
+    }
+
+    @Override
+    public <T> Entry<T> createEntry(String key) {
+        return wrap(entryFactory.<T>createEntry(key));
+    }
+
+    @Override
+    public <T> Entry<T> createEntry(String key, EntryKeyFactory.KeyParams keyParams) {
+        if (entryFactory instanceof KeyParamsEntryFactory) {
+            return wrap(((KeyParamsEntryFactory) entryFactory).<T>createEntry(key, keyParams));
+        } else {
+            return createEntry(key);
+        }
+    }
+
+    private <T> Entry<T> wrap(Entry<T> entry) {
+        Registration<T> registration = getRegistration(entry.getDataClass());
+        if (registration != null) {
+            return new DefaultLoadingEntry<>(entry, registration.loader, resultExecutor, registration.revalidateDirty);
+        }
+        return entry;
+    }
+
+    private static class Registration<T> {
+        final EntryLoader<T> loader;
+        final boolean revalidateDirty;
+
+        Registration(EntryLoader<T> loader, boolean revalidateDirty) {
+            this.loader = loader;
+            this.revalidateDirty = revalidateDirty;
+        }
+    }
+
+}
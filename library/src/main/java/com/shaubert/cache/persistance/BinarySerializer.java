@@ -0,0 +1,716 @@
+package com.shaubert.cache.persistance;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Compact binary {@link com.shaubert.cache.persistance.DataSerializer DataSerializer} for plain data classes.
+ * Much faster and smaller on disk than {@link com.shaubert.cache.persistance.JavaSerializer JavaSerializer}.
+ * <p>
+ * Serializer is applicable only to classes passed to constructor, add it to
+ * {@link com.shaubert.cache.persistance.DataSerializersGroup DataSerializersGroup} before other serializers
+ * to use it for these classes. Supported values:
+ * <ul>
+ *     <li>primitives, their wrappers, {@link java.lang.String String}, {@link java.util.Date Date},
+ *     enums and {@code byte[]};</li>
+ *     <li>{@link java.util.List List}, {@link java.util.Set Set} and {@link java.util.Map Map}
+ *     of supported values;</li>
+ *     <li>objects with no-arg constructor (may be private), all their non-static and non-transient fields,
+ *     including fields of superclasses, are serialized.</li>
+ * </ul>
+ * Cyclic references are not supported, shared objects are written as separate copies.
+ * <p>
+ * Only classes passed to constructor and classes declared in their fields (recursively, including type
+ * arguments like {@code List<Item>}) are written and read, so stored data can't instantiate arbitrary classes.
+ * Values of other classes, for example subclasses of declared field types, can't be serialized.
+ * <p>
+ * Data is written with format tag and {@code version} passed to constructor, data of another version can't
+ * be deserialized. Change version (and {@link com.shaubert.cache.persistance.FileStorage FileStorage} version)
+ * when you change fields of persisted classes.
+ */
+public class BinarySerializer implements ByteBufferSerializer {
+
+    private static final int FORMAT = 1;
+
+    private static final int NULL = 0;
+    private static final int TRUE = 1;
+    private static final int FALSE = 2;
+    private static final int BYTE = 3;
+    private static final int SHORT = 4;
+    private static final int CHAR = 5;
+    private static final int INT = 6;
+    private static final int LONG = 7;
+    private static final int FLOAT = 8;
+    private static final int DOUBLE = 9;
+    private static final int STRING = 10;
+    private static final int DATE = 11;
+    private static final int BYTES = 12;
+    private static final int ENUM = 13;
+    private static final int LIST = 14;
+    private static final int SET = 15;
+    private static final int MAP = 16;
+    private static final int OBJECT = 17;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final int version;
+    private final Set<Class<?>> classes;
+    private final ConcurrentMap<Class<?>, ClassInfo> classInfos = new ConcurrentHashMap<>();
+    /**
+     * Classes that may be written with their names: registered classes and classes declared in their fields.
+     */
+    private final Map<String, Class<?>> allowedClasses = new HashMap<>();
+
+    /**
+     * @param version version of serialized classes
+     * @param classes classes this serializer is applicable to
+     */
+    public BinarySerializer(int version, Class<?>... classes) {
+        this.version = version;
+        this.classes = Collections.<Class<?>>unmodifiableSet(new LinkedHashSet<>(Arrays.asList(classes)));
+        for (Class<?> cls : classes) {
+            collectClasses(cls, allowedClasses);
+        }
+    }
+
+    /**
+     * Collects classes of type, its type arguments and its fields. Values of primitives, strings, dates and
+     * containers are written without class names, so these classes are not collected.
+     */
+    private static void collectClasses(Type type, Map<String, Class<?>> result) {
+        if (type instanceof ParameterizedType) {
+            ParameterizedType parameterized = (ParameterizedType) type;
+            collectClasses(parameterized.getRawType(), result);
+            for (Type argument : parameterized.getActualTypeArguments()) {
+                collectClasses(argument, result);
+            }
+        } else if (type instanceof WildcardType) {
+            for (Type bound : ((WildcardType) type).getUpperBounds()) {
+                collectClasses(bound, result);
+            }
+        } else if (type instanceof Class) {
+            Class<?> cls = (Class<?>) type;
+            if (cls.isPrimitive() || cls.isArray() || cls.getName().startsWith("java.")
+                    || result.containsKey(cls.getName())) {
+                return;
+            }
+            if (cls.isEnum()) {
+                result.put(cls.getName(), cls);
+                return;
+            }
+            if (cls.isInterface() || Modifier.isAbstract(cls.getModifiers())
+                    || Collection.class.isAssignableFrom(cls) || Map.class.isAssignableFrom(cls)) {
+                return;
+            }
+
+            result.put(cls.getName(), cls);
+            for (Class<?> current = cls; current != null && current != Object.class;
+                 current = current.getSuperclass()) {
+                for (Field field : current.getDeclaredFields()) {
+                    if (isSerialized(field)) {
+                        collectClasses(field.getGenericType(), result);
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean isSerialized(Field field) {
+        int modifiers = field.getModifiers();
+        return !Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic();
+    }
+
+    @Override
+    public boolean isApplicable(Class<?> clazz) {
+        return classes.contains(clazz);
+    }
+
+    @Override
+    public <T> void serialize(T data, OutputStream outputStream) throws IOException {
+        BufferedOutputStream bufferedStream = new BufferedOutputStream(outputStream, 1024 * 8);
+        write(data, bufferedStream);
+        bufferedStream.flush();
+    }
+
+    @Override
+    public <T> void serialize(T data, ByteBufferOutputStream output) throws IOException {
+        writeData(data, new BufferDataOutput(output));
+    }
+
+    private void write(Object data, OutputStream outputStream) throws IOException {
+        DataOutputStream output = new DataOutputStream(outputStream);
+        writeData(data, output);
+        output.flush();
+    }
+
+    private void writeData(Object data, DataOutput output) throws IOException {
+        output.writeByte(FORMAT);
+        output.writeInt(version);
+        new Writer(output).writeValue(data);
+    }
+
+    @Override
+    public <T> T deserialize(Class<T> dataClass, InputStream inputStream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024 * 8);
+        byte[] buffer = new byte[1024 * 8];
+        int length;
+        while ((length = inputStream.read(buffer)) >= 0) {
+            bytes.write(buffer, 0, length);
+        }
+        return deserialize(dataClass, ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    @Override
+    public <T> T deserialize(Class<T> dataClass, ByteBuffer buffer) throws IOException {
+        try {
+            int format = buffer.get() & 0xFF;
+            if (format != FORMAT) {
+                throw new IOException("unknown format " + format);
+            }
+            int dataVersion = buffer.getInt();
+            if (dataVersion != version) {
+                throw new IOException("data version " + dataVersion + " differs from serializer version " + version);
+            }
+            Object result = new Reader(buffer).readValue(dataClass);
+            if (result != null && !dataClass.isInstance(result)) {
+                throw new IOException("expected " + dataClass.getName() + " but found " + result.getClass().getName());
+            }
+            return dataClass.cast(result);
+        } catch (BufferUnderflowException ex) {
+            throw new IOException("unexpected end of data");
+        }
+    }
+
+    private ClassInfo getClassInfo(Class<?> cls) throws IOException {
+        ClassInfo info = classInfos.get(cls);
+        if (info == null) {
+            info = new ClassInfo(cls);
+            ClassInfo prev = classInfos.putIfAbsent(cls, info);
+            if (prev != null) {
+                info = prev;
+            }
+        }
+        return info;
+    }
+
+    private Class<?> getClass(String name) throws IOException {
+        Class<?> cls = allowedClasses.get(name);
+        if (cls == null) {
+            throw new IOException("class is not registered or declared in fields: " + name);
+        }
+        return cls;
+    }
+
+    /**
+     * Cached accessors of serialized fields of class.
+     */
+    private static class ClassInfo {
+        final Constructor<?> constructor;
+        final Field[] fields;
+
+        ClassInfo(Class<?> cls) throws IOException {
+            if (cls.isInterface() || Modifier.isAbstract(cls.getModifiers())) {
+                throw new IOException("unable to serialize abstract class " + cls.getName());
+            }
+            try {
+                constructor = cls.getDeclaredConstructor();
+                constructor.setAccessible(true);
+            } catch (NoSuchMethodException ex) {
+                throw new IOException("no-arg constructor required in " + cls.getName());
+            }
+
+            List<Field> result = new ArrayList<>();
+            for (Class<?> current = cls; current != null && current != Object.class;
+                 current = current.getSuperclass()) {
+                List<Field> declared = new ArrayList<>();
+                for (Field field : current.getDeclaredFields()) {
+                    if (!isSerialized(field)) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    declared.add(field);
+                }
+                //getDeclaredFields() order is not specified
+                Collections.sort(declared, new Comparator<Field>() {
+                    @Override
+                    public int compare(Field lhs, Field rhs) {
+                        return lhs.getName().compareTo(rhs.getName());
+                    }
+                });
+                result.addAll(0, declared);
+            }
+            fields = result.toArray(new Field[result.size()]);
+        }
+
+        Object newInstance() throws IOException {
+            try {
+                return constructor.newInstance();
+            } catch (Exception ex) {
+                throw new IOException("unable to create " + constructor.getDeclaringClass().getName() + ": " + ex);
+            }
+        }
+    }
+
+    private class Writer {
+        private final DataOutput output;
+        private final Map<Class<?>, Integer> classIds = new HashMap<>();
+
+        Writer(DataOutput output) {
+            this.output = output;
+        }
+
+        void writeValue(Object value) throws IOException {
+            if (value == null) {
+                output.writeByte(NULL);
+            } else if (value instanceof String) {
+                output.writeByte(STRING);
+                writeString((String) value);
+            } else if (value instanceof Integer) {
+                output.writeByte(INT);
+                output.writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                output.writeByte(LONG);
+                output.writeLong((Long) value);
+            } else if (value instanceof Boolean) {
+                output.writeByte((Boolean) value ? TRUE : FALSE);
+            } else if (value instanceof Double) {
+                output.writeByte(DOUBLE);
+                output.writeDouble((Double) value);
+            } else if (value instanceof Float) {
+                output.writeByte(FLOAT);
+                output.writeFloat((Float) value);
+            } else if (value instanceof Byte) {
+                output.writeByte(BYTE);
+                output.writeByte((Byte) value);
+            } else if (value instanceof Short) {
+                output.writeByte(SHORT);
+                output.writeShort((Short) value);
+            } else if (value instanceof Character) {
+                output.writeByte(CHAR);
+                output.writeChar((Character) value);
+            } else if (value instanceof Date) {
+                output.writeByte(DATE);
+                output.writeLong(((Date) value).getTime());
+            } else if (value instanceof byte[]) {
+                byte[] bytes = (byte[]) value;
+                output.writeByte(BYTES);
+                writeSize(bytes.length);
+                output.write(bytes);
+            } else if (value instanceof Enum) {
+                output.writeByte(ENUM);
+                writeClass(((Enum<?>) value).getDeclaringClass());
+                writeString(((Enum<?>) value).name());
+            } else if (value instanceof List) {
+                output.writeByte(LIST);
+                writeCollection((Collection<?>) value);
+            } else if (value instanceof Set) {
+                output.writeByte(SET);
+                writeCollection((Collection<?>) value);
+            } else if (value instanceof Map) {
+                output.writeByte(MAP);
+                Map<?, ?> map = (Map<?, ?>) value;
+                writeSize(map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    writeValue(entry.getKey());
+                    writeValue(entry.getValue());
+                }
+            } else if (value.getClass().isArray()) {
+                throw new IOException("arrays are not supported: " + value.getClass());
+            } else {
+                output.writeByte(OBJECT);
+                writeObject(value);
+            }
+        }
+
+        private void writeCollection(Collection<?> collection) throws IOException {
+            writeSize(collection.size());
+            for (Object item : collection) {
+                writeValue(item);
+            }
+        }
+
+        private void writeObject(Object value) throws IOException {
+            Class<?> cls = value.getClass();
+            writeClass(cls);
+            try {
+                for (Field field : getClassInfo(cls).fields) {
+                    Class<?> type = field.getType();
+                    if (type == int.class) {
+                        output.writeInt(field.getInt(value));
+                    } else if (type == long.class) {
+                        output.writeLong(field.getLong(value));
+                    } else if (type == boolean.class) {
+                        output.writeBoolean(field.getBoolean(value));
+                    } else if (type == double.class) {
+                        output.writeDouble(field.getDouble(value));
+                    } else if (type == float.class) {
+                        output.writeFloat(field.getFloat(value));
+                    } else if (type == byte.class) {
+                        output.writeByte(field.getByte(value));
+                    } else if (type == short.class) {
+                        output.writeShort(field.getShort(value));
+                    } else if (type == char.class) {
+                        output.writeChar(field.getChar(value));
+                    } else {
+                        writeValue(field.get(value));
+                    }
+                }
+            } catch (IllegalAccessException ex) {
+                throw new IOException("unable to read field of " + cls.getName() + ": " + ex);
+            }
+        }
+
+        /**
+         * Writes class name on first occurrence and its index later.
+         */
+        private void writeClass(Class<?> cls) throws IOException {
+            if (allowedClasses.get(cls.getName()) != cls) {
+                //such data couldn't be read
+                throw new IOException("class is not registered or declared in fields: " + cls.getName());
+            }
+            Integer id = classIds.get(cls);
+            if (id != null) {
+                writeSize(id + 1);
+            } else {
+                writeSize(0);
+                writeString(cls.getName());
+                classIds.put(cls, classIds.size());
+            }
+        }
+
+        private void writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes(UTF_8);
+            writeSize(bytes.length);
+            output.write(bytes);
+        }
+
+        private void writeSize(int size) throws IOException {
+            while ((size & ~0x7F) != 0) {
+                output.writeByte((size & 0x7F) | 0x80);
+                size >>>= 7;
+            }
+            output.writeByte(size);
+        }
+    }
+
+    /**
+     * Puts primitives directly into {@link ByteBufferOutputStream#buffer(int) buffers} of output
+     * instead of writing them byte by byte. Writes the same bytes as {@link DataOutputStream}.
+     */
+    static class BufferDataOutput implements DataOutput {
+        private final ByteBufferOutputStream output;
+
+        BufferDataOutput(ByteBufferOutputStream output) {
+            this.output = output;
+        }
+
+        @Override
+        public void write(int b) {
+            output.buffer(1).put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] bytes) {
+            output.write(bytes, 0, bytes.length);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            output.write(bytes, offset, length);
+        }
+
+        @Override
+        public void writeBoolean(boolean value) {
+            output.buffer(1).put((byte) (value ? 1 : 0));
+        }
+
+        @Override
+        public void writeByte(int value) {
+            output.buffer(1).put((byte) value);
+        }
+
+        @Override
+        public void writeShort(int value) {
+            output.buffer(2).putShort((short) value);
+        }
+
+        @Override
+        public void writeChar(int value) {
+            output.buffer(2).putChar((char) value);
+        }
+
+        @Override
+        public void writeInt(int value) {
+            output.buffer(4).putInt(value);
+        }
+
+        @Override
+        public void writeLong(long value) {
+            output.buffer(8).putLong(value);
+        }
+
+        @Override
+        public void writeFloat(float value) {
+            output.buffer(4).putFloat(value);
+        }
+
+        @Override
+        public void writeDouble(double value) {
+            output.buffer(8).putDouble(value);
+        }
+
+        @Override
+        public void writeBytes(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                writeByte(value.charAt(i));
+            }
+        }
+
+        @Override
+        public void writeChars(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                writeChar(value.charAt(i));
+            }
+        }
+
+        @Override
+        public void writeUTF(String value) throws IOException {
+            //modified UTF-8 with length, encoded by DataOutputStream
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(value.length() + 2);
+            DataOutputStream utf = new DataOutputStream(bytes);
+            utf.writeUTF(value);
+            utf.flush();
+            write(bytes.toByteArray());
+        }
+    }
+
+    private class Reader {
+        private final ByteBuffer buffer;
+        private final List<Class<?>> classes = new ArrayList<>();
+
+        Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * @param type declared type of value, used to create collections of declared class
+         */
+        Object readValue(Class<?> type) throws IOException {
+            int tag = buffer.get() & 0xFF;
+            switch (tag) {
+                case NULL:
+                    return null;
+                case TRUE:
+                    return Boolean.TRUE;
+                case FALSE:
+                    return Boolean.FALSE;
+                case BYTE:
+                    return buffer.get();
+                case SHORT:
+                    return buffer.getShort();
+                case CHAR:
+                    return buffer.getChar();
+                case INT:
+                    return buffer.getInt();
+                case LONG:
+                    return buffer.getLong();
+                case FLOAT:
+                    return buffer.getFloat();
+                case DOUBLE:
+                    return buffer.getDouble();
+                case STRING:
+                    return readString();
+                case DATE:
+                    return new Date(buffer.getLong());
+                case BYTES:
+                    byte[] bytes = new byte[readSize(1)];
+                    buffer.get(bytes);
+                    return bytes;
+                case ENUM:
+                    return readEnum();
+                case LIST:
+                case SET:
+                    return readCollection(tag, type);
+                case MAP:
+                    return readMap(type);
+                case OBJECT:
+                    return readObject();
+                default:
+                    throw new IOException("unknown value tag " + tag);
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Object readEnum() throws IOException {
+            Class cls = readClass();
+            if (!cls.isEnum()) {
+                throw new IOException("not enum: " + cls.getName());
+            }
+            String name = readString();
+            try {
+                return Enum.valueOf(cls, name);
+            } catch (IllegalArgumentException ex) {
+                throw new IOException("unknown constant " + name + " of " + cls.getName());
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private Object readCollection(int tag, Class<?> type) throws IOException {
+            //every item has at least tag
+            int size = readSize(1);
+            Collection<Object> collection = (Collection<Object>) newContainer(type, Collection.class);
+            if (collection == null) {
+                collection = tag == LIST ? new ArrayList<>(size) : new LinkedHashSet<>(size * 4 / 3 + 1);
+            }
+            for (int i = 0; i < size; i++) {
+                collection.add(readValue(Object.class));
+            }
+            return collection;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Object readMap(Class<?> type) throws IOException {
+            //every entry has at least tags of key and value
+            int size = readSize(2);
+            Map<Object, Object> map = (Map<Object, Object>) newContainer(type, Map.class);
+            if (map == null) {
+                map = new LinkedHashMap<>(size * 4 / 3 + 1);
+            }
+            for (int i = 0; i < size; i++) {
+                Object key = readValue(Object.class);
+                map.put(key, readValue(Object.class));
+            }
+            return map;
+        }
+
+        /**
+         * @return instance of declared type if it's concrete class or null to use default implementation
+         */
+        private Object newContainer(Class<?> type, Class<?> containerType) throws IOException {
+            if (type == null || !containerType.isAssignableFrom(type)
+                    || type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+                return null;
+            }
+            try {
+                return type.newInstance();
+            } catch (Exception ex) {
+                throw new IOException("unable to create " + type.getName() + ": " + ex);
+            }
+        }
+
+        private Object readObject() throws IOException {
+            Class<?> cls = readClass();
+            ClassInfo info = getClassInfo(cls);
+            Object result = info.newInstance();
+            try {
+                for (Field field : info.fields) {
+                    Class<?> type = field.getType();
+                    if (type == int.class) {
+                        field.setInt(result, buffer.getInt());
+                    } else if (type == long.class) {
+                        field.setLong(result, buffer.getLong());
+                    } else if (type == boolean.class) {
+                        field.setBoolean(result, buffer.get() != 0);
+                    } else if (type == double.class) {
+                        field.setDouble(result, buffer.getDouble());
+                    } else if (type == float.class) {
+                        field.setFloat(result, buffer.getFloat());
+                    } else if (type == byte.class) {
+                        field.setByte(result, buffer.get());
+                    } else if (type == short.class) {
+                        field.setShort(result, buffer.getShort());
+                    } else if (type == char.class) {
+                        field.setChar(result, buffer.getChar());
+                    } else {
+                        field.set(result, readValue(type));
+                    }
+                }
+            } catch (IllegalAccessException ex) {
+                throw new IOException("unable to set field of " + cls.getName() + ": " + ex);
+            } catch (IllegalArgumentException ex) {
+                throw new IOException("incompatible field value in " + cls.getName() + ": " + ex.getMessage());
+            }
+            return result;
+        }
+
+        private Class<?> readClass() throws IOException {
+            int id = readSize();
+            if (id == 0) {
+                Class<?> cls = BinarySerializer.this.getClass(readString());
+                classes.add(cls);
+                return cls;
+            }
+            if (id > classes.size()) {
+                throw new IOException("unknown class index " + id);
+            }
+            return classes.get(id - 1);
+        }
+
+        private String readString() throws IOException {
+            int length = readSize(1);
+            if (buffer.hasArray()) {
+                String result = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, UTF_8);
+                buffer.position(buffer.position() + length);
+                return result;
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, UTF_8);
+        }
+
+        /**
+         * Reads size of item sequence and checks that buffer is large enough for it, so broken size
+         * can't allocate large array.
+         * @param minItemBytes min number of bytes of item
+         */
+        private int readSize(int minItemBytes) throws IOException {
+            int size = readSize();
+            if ((long) size * minItemBytes > buffer.remaining()) {
+                throw new IOException("unexpected end of data");
+            }
+            return size;
+        }
+
+        private int readSize() throws IOException {
+            int result = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = buffer.get() & 0xFF;
+                result |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    if (result < 0) break;
+                    return result;
+                }
+            }
+            throw new IOException("malformed size");
+        }
+    }
+
+}
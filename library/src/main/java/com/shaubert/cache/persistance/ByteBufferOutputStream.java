@@ -0,0 +1,137 @@
+package com.shaubert.cache.persistance;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link java.io.OutputStream OutputStream} that writes data into chain of pooled direct
+ * {@link java.nio.ByteBuffer ByteBuffers}. Unlike {@link java.io.ByteArrayOutputStream ByteArrayOutputStream}
+ * it never copies written data to grow and data is written to file without intermediate array.
+ * <p>
+ * {@link com.shaubert.cache.persistance.ByteBufferSerializer ByteBufferSerializer} can put data directly
+ * into {@link #buffer(int) buffer}. Stream passed to serializer is owned by storage, serializers must not keep
+ * references to it or its buffers.
+ */
+public final class ByteBufferOutputStream extends OutputStream {
+
+    private final ByteBufferPool pool;
+    private final List<ByteBuffer> buffers = new ArrayList<>();
+    private ByteBuffer current;
+    private boolean released;
+
+    /**
+     * Creates stream with buffers of shared pool, {@link #release() release} it after use.
+     */
+    public ByteBufferOutputStream() {
+        this(ByteBufferPool.shared());
+    }
+
+    ByteBufferOutputStream(ByteBufferPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Serializes data to new stream with buffers of shared pool.
+     * @return stream with serialized data, {@link #release() release} it after use
+     */
+    static ByteBufferOutputStream serialize(DataSerializer serializer, Object data) throws IOException {
+        ByteBufferOutputStream outputStream = new ByteBufferOutputStream();
+        boolean success = false;
+        try {
+            if (serializer instanceof ByteBufferSerializer) {
+                ((ByteBufferSerializer) serializer).serialize(data, outputStream);
+            } else {
+                serializer.serialize(data, outputStream);
+            }
+            success = true;
+            return outputStream;
+        } finally {
+            if (!success) {
+                outputStream.release();
+            }
+        }
+    }
+
+    /**
+     * @param minRemaining number of bytes caller is going to put, not greater than {@link #maxChunkSize()}
+     * @return buffer with at least {@code minRemaining} bytes remaining. Put data at buffer position.
+     */
+    public ByteBuffer buffer(int minRemaining) {
+        if (minRemaining > pool.getBufferSize()) {
+            throw new IllegalArgumentException("requested " + minRemaining + " bytes, max is " + maxChunkSize());
+        }
+        if (released) {
+            throw new IllegalStateException("stream is released");
+        }
+        if (current == null || current.remaining() < minRemaining) {
+            current = pool.acquire();
+            buffers.add(current);
+        }
+        return current;
+    }
+
+    /**
+     * @return max number of bytes that can be requested with {@link #buffer(int)}
+     */
+    public int maxChunkSize() {
+        return pool.getBufferSize();
+    }
+
+    @Override
+    public void write(int b) {
+        buffer(1).put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        while (length > 0) {
+            ByteBuffer buffer = buffer(1);
+            int count = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * @return number of written bytes
+     */
+    public long size() {
+        long result = 0;
+        for (ByteBuffer buffer : buffers) {
+            result += buffer.position();
+        }
+        return result;
+    }
+
+    /**
+     * @return read-only views of written data, valid until {@link #release()}
+     */
+    public ByteBuffer[] data() {
+        ByteBuffer[] result = new ByteBuffer[buffers.size()];
+        for (int i = 0; i < result.length; i++) {
+            ByteBuffer data = buffers.get(i).asReadOnlyBuffer();
+            data.flip();
+            result[i] = data;
+        }
+        return result;
+    }
+
+    /**
+     * Returns buffers to pool. Stream can't be used after this call.
+     */
+    public void release() {
+        if (released) return;
+
+        released = true;
+        for (ByteBuffer buffer : buffers) {
+            pool.release(buffer);
+        }
+        buffers.clear();
+        current = null;
+    }
+
+}
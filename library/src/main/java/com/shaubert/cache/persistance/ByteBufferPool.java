@@ -0,0 +1,61 @@
+package com.shaubert.cache.persistance;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+
+/**
+ * Pool of direct {@link java.nio.ByteBuffer ByteBuffers} of the same size. Buffers are allocated on demand,
+ * at most {@code maxPooled} released buffers are kept for reuse.
+ */
+class ByteBufferPool {
+
+    static final int DEFAULT_BUFFER_SIZE = 32 * 1024;
+    static final int DEFAULT_MAX_POOLED = 32;
+
+    private static final ByteBufferPool SHARED = new ByteBufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_POOLED);
+
+    private final ArrayDeque<ByteBuffer> buffers = new ArrayDeque<>();
+    private final int bufferSize;
+    private final int maxPooled;
+
+    ByteBufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    static ByteBufferPool shared() {
+        return SHARED;
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return cleared big-endian buffer of {@link #getBufferSize()} capacity
+     */
+    ByteBuffer acquire() {
+        ByteBuffer buffer;
+        synchronized (buffers) {
+            buffer = buffers.pollLast();
+        }
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+        buffer.clear();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        return buffer;
+    }
+
+    void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize || !buffer.isDirect()) return;
+
+        synchronized (buffers) {
+            if (buffers.size() < maxPooled) {
+                buffers.addLast(buffer);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.shaubert.cache.persistance;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link com.shaubert.cache.persistance.DataSerializer DataSerializer} that can read data directly from
+ * {@link java.nio.ByteBuffer ByteBuffer} and write it to pooled buffers. Storage may provide memory mapped
+ * file as buffer, so serializer can read data without copying it to heap.
+ */
+public interface ByteBufferSerializer extends DataSerializer {
+
+    /**
+     * @param dataClass class of data
+     * @param buffer buffer with serialized data between position and limit. Buffer is valid only during this call.
+     * @param <T> data type
+     * @return deserialized data
+     * @throws IOException if data can't be deserialized
+     */
+    <T> T deserialize(Class<T> dataClass, ByteBuffer buffer) throws IOException;
+
+    /**
+     * @param data data to serialize
+     * @param output output that collects data in pooled direct buffers. Use
+     *               {@link com.shaubert.cache.persistance.ByteBufferOutputStream#buffer(int) output.buffer()}
+     *               to put primitives directly or write to it as to usual stream.
+     * @param <T> data type
+     * @throws IOException if data can't be serialized
+     */
+    <T> void serialize(T data, ByteBufferOutputStream output) throws IOException;
+
+}
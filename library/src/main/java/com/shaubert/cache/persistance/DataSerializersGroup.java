@@ -3,33 +3,65 @@ package com.shaubert.cache.persistance;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
-public class DataSerializersGroup implements DataSerializer {
+/**
+ * Delegates serialization to the first added applicable serializer. Resolved serializer is cached per class,
+ * so {@link DataSerializer#isApplicable(Class) isApplicable()} of members is called once per class until
+ * serializers are changed. Thread-safe.
+ */
+public class DataSerializersGroup implements ByteBufferSerializer {
 
-    private List<DataSerializer> dataSerializers = new ArrayList<DataSerializer>();
+    private static final Object NOT_APPLICABLE = new Object();
+
+    private final List<DataSerializer> dataSerializers = new CopyOnWriteArrayList<>();
+    private volatile ConcurrentMap<Class<?>, Object> resolved = new ConcurrentHashMap<>();
 
     public void add(DataSerializer serializer) {
         dataSerializers.add(serializer);
+        resolved = new ConcurrentHashMap<>();
     }
 
     public void remove(DataSerializer serializer) {
         dataSerializers.remove(serializer);
+        resolved = new ConcurrentHashMap<>();
     }
 
     @Override
     public boolean isApplicable(Class<?> clazz) {
-        return getApplicable(clazz) != null;
+        return resolve(clazz) != null;
     }
 
-    private DataSerializer getApplicable(Class<?> clazz) {
-        for (DataSerializer serializer : dataSerializers) {
-            if (serializer.isApplicable(clazz)) {
-                return serializer;
+    /**
+     * @return applicable serializer or null
+     */
+    private DataSerializer resolve(Class<?> clazz) {
+        //changes of serializers replace map, so result of stale resolution is put to old map
+        ConcurrentMap<Class<?>, Object> resolved = this.resolved;
+        Object result = resolved.get(clazz);
+        if (result == null) {
+            result = NOT_APPLICABLE;
+            for (DataSerializer serializer : dataSerializers) {
+                if (serializer.isApplicable(clazz)) {
+                    result = serializer;
+                    break;
+                }
             }
+            resolved.put(clazz, result);
         }
-        throw new IllegalArgumentException("unable to find applicable serializer for class: " + clazz);
+        return result != NOT_APPLICABLE ? (DataSerializer) result : null;
+    }
+
+    private DataSerializer getApplicable(Class<?> clazz) {
+        DataSerializer serializer = resolve(clazz);
+        if (serializer == null) {
+            throw new IllegalArgumentException("unable to find applicable serializer for class: " + clazz);
+        }
+        return serializer;
     }
 
     @Override
@@ -42,4 +74,24 @@ public class DataSerializersGroup implements DataSerializer {
         return getApplicable(dataClass).deserialize(dataClass, inputStream);
     }
 
+    @Override
+    public <T> void serialize(T data, ByteBufferOutputStream output) throws IOException {
+        DataSerializer serializer = getApplicable(data.getClass());
+        if (serializer instanceof ByteBufferSerializer) {
+            ((ByteBufferSerializer) serializer).serialize(data, output);
+        } else {
+            serializer.serialize(data, output);
+        }
+    }
+
+    @Override
+    public <T> T deserialize(Class<T> dataClass, ByteBuffer buffer) throws IOException {
+        DataSerializer serializer = getApplicable(dataClass);
+        if (serializer instanceof ByteBufferSerializer) {
+            return ((ByteBufferSerializer) serializer).deserialize(dataClass, buffer);
+        } else {
+            return serializer.deserialize(dataClass, new ByteBufferInputStream(buffer));
+        }
+    }
+
 }
@@ -0,0 +1,206 @@
+package com.shaubert.cache.persistance;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses record data with {@link java.util.zip.Deflater Deflater}. Compressed data starts with length of
+ * uncompressed data (int) followed by deflate stream. Every thread reuses its own deflater and inflater,
+ * they are {@link Deflater#reset() reset} after every call. Call {@link #end()} to free their native memory.
+ */
+class DeflateCodec {
+
+    private static final int CHUNK_SIZE = 1024 * 8;
+
+    private final ThreadLocal<Codecs> threadCodecs = new ThreadLocal<>();
+
+    /**
+     * Codecs that hold native memory. Guarded by itself.
+     */
+    private final Set<Codecs> activeCodecs = new HashSet<>();
+
+    private Codecs getCodecs() {
+        Codecs result = threadCodecs.get();
+        if (result == null) {
+            result = new Codecs();
+            threadCodecs.set(result);
+        }
+        return result;
+    }
+
+    /**
+     * Ends codecs of all threads. Codec may be used after this call, it creates new deflater and inflater.
+     */
+    void end() {
+        List<Codecs> codecs;
+        synchronized (activeCodecs) {
+            codecs = new ArrayList<>(activeCodecs);
+            activeCodecs.clear();
+        }
+        for (Codecs codec : codecs) {
+            codec.end();
+        }
+    }
+
+    /**
+     * @param data data to compress
+     * @param pool pool for output buffers
+     * @return compressed data, caller should {@link ByteBufferOutputStream#release() release} it
+     */
+    ByteBufferOutputStream deflate(ByteBufferOutputStream data, ByteBufferPool pool) throws IOException {
+        long size = data.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("data is too large: " + size);
+        }
+
+        Codecs codecs = getCodecs();
+        //lock is not contended, it only protects codecs from end() of another thread
+        synchronized (codecs) {
+            return deflate(data, (int) size, codecs.getDeflater(), codecs.input, codecs.output, pool);
+        }
+    }
+
+    private static ByteBufferOutputStream deflate(ByteBufferOutputStream data, int size, Deflater deflater,
+                                                  byte[] input, byte[] output, ByteBufferPool pool) {
+        ByteBufferOutputStream result = new ByteBufferOutputStream(pool);
+        boolean success = false;
+        try {
+            result.buffer(4).putInt(size);
+            for (ByteBuffer part : data.data()) {
+                while (part.hasRemaining()) {
+                    int length = Math.min(input.length, part.remaining());
+                    part.get(input, 0, length);
+                    deflater.setInput(input, 0, length);
+                    while (!deflater.needsInput()) {
+                        result.write(output, 0, deflater.deflate(output));
+                    }
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                result.write(output, 0, deflater.deflate(output));
+            }
+            success = true;
+            return result;
+        } finally {
+            deflater.reset();
+            if (!success) {
+                result.release();
+            }
+        }
+    }
+
+    /**
+     * @param data compressed data between position and limit, position is not changed
+     * @return uncompressed data
+     * @throws RecordFormat.CorruptedDataException if data can't be decompressed
+     */
+    ByteBuffer inflate(ByteBuffer data) throws IOException {
+        Codecs codecs = getCodecs();
+        synchronized (codecs) {
+            return inflate(data, codecs.getInflater(), codecs.input);
+        }
+    }
+
+    private static ByteBuffer inflate(ByteBuffer data, Inflater inflater, byte[] input) throws IOException {
+        ByteBuffer compressed = data.duplicate();
+        if (compressed.remaining() < 4) {
+            throw new RecordFormat.CorruptedDataException("compressed data is too short");
+        }
+        int size = compressed.getInt();
+        if (size < 0) {
+            throw new RecordFormat.CorruptedDataException("negative uncompressed length " + size);
+        }
+
+        byte[] result = new byte[size];
+        int offset = 0;
+        try {
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    if (!compressed.hasRemaining()) {
+                        throw new RecordFormat.CorruptedDataException("unexpected end of compressed data");
+                    }
+                    if (compressed.hasArray()) {
+                        inflater.setInput(compressed.array(), compressed.arrayOffset() + compressed.position(),
+                                compressed.remaining());
+                        compressed.position(compressed.limit());
+                    } else {
+                        int length = Math.min(input.length, compressed.remaining());
+                        compressed.get(input, 0, length);
+                        inflater.setInput(input, 0, length);
+                    }
+                }
+                if (offset == size) {
+                    //let inflater check end of stream
+                    if (inflater.inflate(new byte[1]) > 0) {
+                        throw new RecordFormat.CorruptedDataException("uncompressed data is too long");
+                    }
+                } else {
+                    offset += inflater.inflate(result, offset, size - offset);
+                }
+                if (inflater.needsDictionary()) {
+                    throw new RecordFormat.CorruptedDataException("unexpected dictionary");
+                }
+            }
+        } catch (DataFormatException ex) {
+            throw new RecordFormat.CorruptedDataException("malformed compressed data: " + ex.getMessage());
+        } finally {
+            inflater.reset();
+        }
+        if (offset != size) {
+            throw new RecordFormat.CorruptedDataException("uncompressed length " + offset + ", expected " + size);
+        }
+        return ByteBuffer.wrap(result);
+    }
+
+    /**
+     * Deflater, inflater and buffers of one thread. Codecs are created on first use.
+     */
+    private class Codecs {
+        final byte[] input = new byte[CHUNK_SIZE];
+        final byte[] output = new byte[CHUNK_SIZE];
+        private Deflater deflater;
+        private Inflater inflater;
+
+        synchronized Deflater getDeflater() {
+            if (deflater == null) {
+                deflater = new Deflater(Deflater.BEST_SPEED);
+                register();
+            }
+            return deflater;
+        }
+
+        synchronized Inflater getInflater() {
+            if (inflater == null) {
+                inflater = new Inflater();
+                register();
+            }
+            return inflater;
+        }
+
+        private void register() {
+            synchronized (activeCodecs) {
+                activeCodecs.add(this);
+            }
+        }
+
+        synchronized void end() {
+            if (deflater != null) {
+                deflater.end();
+                deflater = null;
+            }
+            if (inflater != null) {
+                inflater.end();
+                inflater = null;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,171 @@
+package com.shaubert.cache.persistance;
+
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Limits total size of data files. Keeps index of files ordered by last access in memory, it's built with one
+ * directory scan in {@link #init(java.io.File)}. Least recently used files are deleted when limit is exceeded.
+ */
+class DiskQuota {
+
+    public static final String TAG = DiskQuota.class.getSimpleName();
+
+    private static final int DATA_FILE_NAME_LENGTH = 40;
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    private final long maxBytes;
+    private final EvictionCallback callback;
+    private final Executor callbackExecutor;
+    private final boolean debugMode;
+
+    /**
+     * File names and sizes, least recently used first.
+     */
+    private final LinkedHashMap<String, Long> files = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    DiskQuota(long maxBytes, EvictionCallback callback, Executor callbackExecutor, boolean debugMode) {
+        this.maxBytes = maxBytes;
+        this.callback = callback;
+        this.callbackExecutor = callbackExecutor;
+        this.debugMode = debugMode;
+    }
+
+    /**
+     * Scans directory and evicts files if limit is exceeded. Temporary files left by interrupted writes are
+     * deleted, they are not counted. Call it on write executor.
+     * @param dir directory of data files
+     */
+    void init(File dir) {
+        File[] dataFiles = dir.listFiles();
+        if (dataFiles == null) return;
+
+        final Map<File, Long> lastModified = new LinkedHashMap<>();
+        for (File file : dataFiles) {
+            if (isDataFile(file)) {
+                lastModified.put(file, file.lastModified());
+            } else if (file.getName().endsWith(TEMP_FILE_SUFFIX) && file.isFile()) {
+                //writes are done on write executor, so temporary file is not being written now
+                if (!file.delete() && debugMode) Log.w(TAG, "unable to delete " + file);
+            }
+        }
+        File[] sorted = lastModified.keySet().toArray(new File[lastModified.size()]);
+        Arrays.sort(sorted, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsModified = lastModified.get(lhs);
+                long rhsModified = lastModified.get(rhs);
+                return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+
+        List<File> evicted;
+        synchronized (files) {
+            for (File file : sorted) {
+                //files written before init are already in index
+                if (!files.containsKey(file.getName())) {
+                    put(file.getName(), file.length());
+                }
+            }
+            evicted = trim(dir, null);
+        }
+        evict(evicted);
+        if (debugMode) Log.d(TAG, String.format("%d files, %d bytes", sorted.length, totalBytes));
+    }
+
+    private static boolean isDataFile(File file) {
+        String name = file.getName();
+        return name.length() == DATA_FILE_NAME_LENGTH && name.indexOf('.') < 0 && file.isFile();
+    }
+
+    /**
+     * Call it on write executor after data file is written.
+     */
+    void onWritten(File file) {
+        List<File> evicted;
+        synchronized (files) {
+            put(file.getName(), file.length());
+            evicted = trim(file.getParentFile(), file.getName());
+        }
+        evict(evicted);
+    }
+
+    void onRead(File file) {
+        boolean indexed;
+        synchronized (files) {
+            indexed = files.get(file.getName()) != null;
+        }
+        if (indexed) {
+            //keeps order of files for the next session
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+        }
+    }
+
+    void onDeleted(File file) {
+        synchronized (files) {
+            Long size = files.remove(file.getName());
+            if (size != null) {
+                totalBytes -= size;
+            }
+        }
+    }
+
+    long getTotalBytes() {
+        synchronized (files) {
+            return totalBytes;
+        }
+    }
+
+    private void put(String name, long size) {
+        Long oldSize = files.put(name, size);
+        totalBytes += size - (oldSize != null ? oldSize : 0);
+    }
+
+    private List<File> trim(File dir, String keep) {
+        List<File> evicted = null;
+        Iterator<Map.Entry<String, Long>> iterator = files.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            if (entry.getKey().equals(keep)) continue;
+
+            iterator.remove();
+            totalBytes -= entry.getValue();
+            if (evicted == null) evicted = new ArrayList<>();
+            evicted.add(new File(dir, entry.getKey()));
+        }
+        return evicted;
+    }
+
+    private void evict(List<File> evicted) {
+        if (evicted == null) return;
+
+        for (File file : evicted) {
+            final String key = RecordFormat.readKey(file);
+            if (!file.delete() && file.exists()) {
+                if (debugMode) Log.w(TAG, "unable to delete " + file);
+                continue;
+            }
+            if (debugMode) Log.d(TAG, "evicted " + key);
+            if (callback != null) {
+                callbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onEvicted(key);
+                    }
+                });
+            }
+        }
+    }
+
+}
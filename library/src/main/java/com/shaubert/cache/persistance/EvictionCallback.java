@@ -0,0 +1,13 @@
+package com.shaubert.cache.persistance;
+
+/**
+ * Callback of entries removed from storage because of its size limit
+ */
+public interface EvictionCallback {
+
+    /**
+     * @param key key of evicted entry or null if entry was saved by previous version of library
+     */
+    void onEvicted(String key);
+
+}
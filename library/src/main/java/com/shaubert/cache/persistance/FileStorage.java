@@ -3,14 +3,36 @@ package com.shaubert.cache.persistance;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.os.AsyncTask;
 import android.os.SystemClock;
 import android.util.Log;
+import com.shaubert.cache.Cache;
+import com.shaubert.cache.EntryKeyFactory;
+import com.shaubert.cache.MainThreadExecutor;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Persistent storage based on files
+ * Persistent storage based on files. Files are read and written on background executors,
+ * callbacks are called on callback executor (main thread by default).
  */
 public class FileStorage implements DataStorage {
 
@@ -21,16 +43,70 @@ public class FileStorage implements DataStorage {
 
     private static final String CACHE_DIR_FILENAME = Hashes.getSHA1("data-storage");
 
+    private static final String CORRUPTED_DIR_FILENAME = "corrupted";
+
+    private static final int MAX_CORRUPTED_FILES = 8;
+
+    private static final String HOT_KEYS_FILENAME = "hot-keys.manifest";
+
+    private static final int FILE_NAMES_CACHE_SIZE = 512;
+
+    private static final String DELETED_KEYS = "deleted-keys";
+    private static final String LEGACY_DELETED_PREFIX = "deleted-";
+    private static final String LEGACY_FILES_TIME = "legacy-files-time";
+
     private final int version;
     private volatile boolean inited;
+    /**
+     * Files without {@link RecordFormat record header} modified at this time or earlier were written
+     * before header was introduced, newer files without header are corrupted.
+     */
+    private long legacyFilesTime = Long.MAX_VALUE;
     private Context context;
     private DataSerializer dataSerializer;
     private DefaultDataCallback defaultDataCallback;
     private SharedPreferences storagePrefs;
     private boolean debugMode = true;
+    private final Executor readExecutor;
+    private final Executor writeExecutor;
+    private final Executor callbackExecutor;
+    private final ScheduledExecutorService scheduler;
+    private long mappedReadThreshold = Builder.DEFAULT_MAPPED_READ_THRESHOLD;
+    private long compressionThreshold = Long.MAX_VALUE;
+    private final DeflateCodec deflateCodec = new DeflateCodec();
+    private final ConcurrentMap<Class<?>, ClassOptions> classOptions = new ConcurrentHashMap<>();
+    private final Set<String> deletedKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicBoolean deletedKeysPersistScheduled = new AtomicBoolean();
+    private final StagingArea stagingArea;
+    private int preloadParallelism = Builder.DEFAULT_READ_PARALLELISM;
+    private long preloadRetainTime = Builder.DEFAULT_PRELOAD_RETAIN_TIME;
+    private HotKeysManifest hotKeys;
+    private volatile List<StagingArea.Staged> prefetchedHotKeys;
+    private DiskQuota quota;
+    private final File cacheDir;
+    /**
+     * Data files of recently used keys, least recently used first.
+     */
+    private final Map<String, File> fileNames = new LinkedHashMap<String, File>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, File> eldest) {
+            return size() > FILE_NAMES_CACHE_SIZE;
+        }
+    };
 
     private FileStorage(Builder builder) {
-        this(builder.context, builder.version, builder.debugMode, builder.dataSerializer, builder.defaultDataCallback);
+        this(builder.context, builder.version, builder.debugMode, builder.dataSerializer, builder.defaultDataCallback,
+                builder.readExecutor, builder.writeExecutor, builder.callbackExecutor, builder.scheduler);
+        this.mappedReadThreshold = builder.mappedReadThreshold;
+        this.compressionThreshold = builder.compressionThreshold;
+        this.preloadParallelism = builder.readParallelism;
+        this.preloadRetainTime = builder.preloadRetainTime;
+        if (builder.maxBytes > 0) {
+            limitSize(builder.maxBytes, builder.evictionCallback);
+        }
+        if (builder.hotKeysMax > 0) {
+            prefetchHotKeys(builder.hotKeysMax, builder.hotKeysRecordTime);
+        }
     }
 
     /**
@@ -42,11 +118,29 @@ public class FileStorage implements DataStorage {
      */
     public FileStorage(Context context, int storageVersion, boolean debugMode,
                        DataSerializer dataSerializer, DefaultDataCallback defaultDataCallback) {
+        this(context, storageVersion, debugMode, dataSerializer, defaultDataCallback,
+                StorageExecutors.newExecutor("data-storage-read", Builder.DEFAULT_READ_PARALLELISM,
+                        Builder.DEFAULT_THREAD_PRIORITY),
+                StorageExecutors.newExecutor("data-storage-write", 1, Builder.DEFAULT_THREAD_PRIORITY),
+                new MainThreadExecutor(),
+                StorageExecutors.newScheduledExecutor("data-storage-scheduler", Builder.DEFAULT_THREAD_PRIORITY));
+    }
+
+    private FileStorage(Context context, int storageVersion, boolean debugMode,
+                        DataSerializer dataSerializer, DefaultDataCallback defaultDataCallback,
+                        Executor readExecutor, Executor writeExecutor, Executor callbackExecutor,
+                        ScheduledExecutorService scheduler) {
         this.version = storageVersion;
         this.context = context.getApplicationContext();
+        this.cacheDir = new File(this.context.getFilesDir(), CACHE_DIR_FILENAME);
         this.debugMode = debugMode;
         this.dataSerializer = dataSerializer;
         this.defaultDataCallback = defaultDataCallback;
+        this.readExecutor = readExecutor;
+        this.writeExecutor = writeExecutor;
+        this.callbackExecutor = callbackExecutor;
+        this.scheduler = scheduler;
+        this.stagingArea = new StagingArea(callbackExecutor);
 
         initCacheIfNeeded();
     }
@@ -78,12 +172,47 @@ public class FileStorage implements DataStorage {
                 if (debugMode) Log.w(TAG, "unable to clean up cache dir");
                 return;
             }
-            preferences.edit().putInt(STORAGE_VERSION, version).commit();
+            //all files are written with header from now on
+            preferences.edit()
+                    .putInt(STORAGE_VERSION, version)
+                    .remove(DELETED_KEYS)
+                    .putLong(LEGACY_FILES_TIME, 0)
+                    .commit();
+        } else if (!preferences.contains(LEGACY_FILES_TIME)) {
+            //files written by previous versions of library may have no header
+            preferences.edit().putLong(LEGACY_FILES_TIME, System.currentTimeMillis()).commit();
         }
+        legacyFilesTime = preferences.getLong(LEGACY_FILES_TIME, 0);
+        loadDeletedKeys(preferences);
 
         inited = true;
     }
 
+    /**
+     * Loads keys of files that were not deleted. Also migrates marks of previous versions that were stored
+     * as separate boolean preferences.
+     */
+    @SuppressLint("CommitPrefEdits")
+    private void loadDeletedKeys(SharedPreferences preferences) {
+        Set<String> keys = preferences.getStringSet(DELETED_KEYS, null);
+        if (keys != null) {
+            deletedKeys.addAll(keys);
+        }
+
+        SharedPreferences.Editor editor = null;
+        for (Map.Entry<String, ?> entry : preferences.getAll().entrySet()) {
+            String name = entry.getKey();
+            if (name.startsWith(LEGACY_DELETED_PREFIX) && entry.getValue() instanceof Boolean) {
+                if (editor == null) editor = preferences.edit();
+                editor.remove(name);
+                deletedKeys.add(name.substring(LEGACY_DELETED_PREFIX.length()));
+            }
+        }
+        if (editor != null) {
+            editor.putStringSet(DELETED_KEYS, new HashSet<>(deletedKeys)).commit();
+        }
+    }
+
     private SharedPreferences getPreferences() {
         if (storagePrefs == null) {
             storagePrefs = context.getSharedPreferences("__sh_data_storage_prefs", Context.MODE_PRIVATE);
@@ -96,37 +225,274 @@ public class FileStorage implements DataStorage {
         initCacheIfNeeded();
 
         removeDeletedMark(data.getClass(), key);
+        stagingArea.invalidate(key);
 
-        new SerializationAsyncTask<>(data,
+        ClassOptions options = getClassOptions(data.getClass());
+        new SerializationTask<>(data,
                 version,
+                key,
                 callback,
                 dataSerializer,
                 convertToFileName(key),
+                options.compress ? 0 : compressionThreshold,
+                deflateCodec,
+                options.immutable,
+                quota,
+                callbackExecutor,
                 debugMode)
-            .executeOnExecutor(AsyncTask.SERIAL_EXECUTOR);
+            .executeOn(writeExecutor);
+    }
+
+    private void limitSize(long maxBytes, EvictionCallback evictionCallback) {
+        quota = new DiskQuota(maxBytes, evictionCallback, callbackExecutor, debugMode);
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                quota.init(getCacheDir());
+            }
+        });
+    }
+
+    /**
+     * Frees native memory of deflaters and inflaters that storage threads keep for compression. Call it when
+     * storage is not needed anymore, storage that is used after this call creates them again.
+     */
+    public void release() {
+        deflateCodec.end();
+    }
+
+    /**
+     * @return total size of data files or -1 if size is not limited with {@link Builder#maxBytes(long)}
+     */
+    public long getSize() {
+        return quota != null ? quota.getTotalBytes() : -1;
+    }
+
+    /**
+     * Prefetches keys recorded in previous session and starts recording of keys in this session.
+     * Prefetched data that is not loaded during recording is dropped.
+     */
+    private void prefetchHotKeys(int maxKeys, long recordTime) {
+        hotKeys = new HotKeysManifest(new File(getCacheDir(), HOT_KEYS_FILENAME), maxKeys, recordTime);
+        if (inited) {
+            readExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Map<String, Class<?>> entries = hotKeys.read();
+                    if (!entries.isEmpty()) {
+                        prefetchedHotKeys = startPreload(entries, null);
+                    }
+                }
+            });
+        }
+
+        hotKeys.startRecording();
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                saveHotKeys();
+                List<StagingArea.Staged> prefetched = prefetchedHotKeys;
+                if (prefetched != null) {
+                    prefetchedHotKeys = null;
+                    stagingArea.expire(prefetched);
+                }
+            }
+        }, recordTime, TimeUnit.MILLISECONDS);
+    }
+
+    private void saveHotKeys() {
+        final Map<String, String> keys = hotKeys.stopRecording();
+        if (keys == null) return;
+
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    hotKeys.write(keys);
+                    if (debugMode) Log.d(TAG, "recorded " + keys.size() + " hot keys");
+                } catch (IOException ex) {
+                    if (debugMode) Log.e(TAG, "failed to save hot keys", ex);
+                }
+            }
+        });
+    }
+
+    private ClassOptions getClassOptions(Class<?> dataClass) {
+        ClassOptions options = classOptions.get(dataClass);
+        if (options == null) {
+            options = new ClassOptions(dataClass.getAnnotation(PersistableData.class));
+            classOptions.put(dataClass, options);
+        }
+        return options;
     }
 
     @Override
     public <T> void load(Class<T> dataClass, String key, StorageLoadCallback<T> callback) {
         initCacheIfNeeded();
+        if (hotKeys != null && hotKeys.record(key, dataClass)) {
+            saveHotKeys();
+        }
         if (isMarkedAsDeleted(dataClass, key)) {
             delete(dataClass, key);
             if (callback != null) callback.onEmptyResult();
-        } else {
-            new SerializationAsyncTask<>(dataClass,
+        } else if (!stagingArea.deliver(dataClass, key, callback)) {
+            new SerializationTask<>(dataClass,
                     version,
                     key,
                     callback,
                     defaultDataCallback,
                     dataSerializer,
                     convertToFileName(key),
+                    getCorruptedDir(),
+                    mappedReadThreshold,
+                    legacyFilesTime,
+                    deflateCodec,
+                    quota,
+                    callbackExecutor,
                     debugMode)
-                .executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+                .executeOn(readExecutor);
         }
     }
 
+    /**
+     * Reads and deserializes entries in background, at most {@link Builder#readParallelism(int) readParallelism}
+     * entries at once. Preloaded data is kept in memory until the first {@link #load(Class, String,
+     * StorageLoadCallback) load()} of its key, that load calls callback immediately on calling thread.
+     * Load of the key that is still being preloaded waits for preloading result. Data that is not loaded in
+     * {@link Builder#preloadRetainTime(long, TimeUnit) preloadRetainTime} after preloading is dropped.
+     * @param entries keys and data classes of entries
+     * @param callback optional callback called on callback executor when all entries are read
+     */
+    public void preload(Map<String, Class<?>> entries, final PreloadCallback callback) {
+        final List<StagingArea.Staged> batch = startPreload(entries, callback);
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                stagingArea.expire(batch);
+            }
+        }, preloadRetainTime, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return staged entries
+     */
+    private List<StagingArea.Staged> startPreload(Map<String, Class<?>> entries, final PreloadCallback callback) {
+        initCacheIfNeeded();
+
+        final long startTime = SystemClock.uptimeMillis();
+        List<StagingArea.Staged> batch = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Class<?>> entry : entries.entrySet()) {
+            if (isMarkedAsDeleted(entry.getValue(), entry.getKey())) continue;
+
+            StagingArea.Staged staged = stagingArea.begin(entry.getKey(), entry.getValue());
+            if (staged != null) {
+                batch.add(staged);
+            }
+        }
+
+        final Queue<StagingArea.Staged> queue = new ConcurrentLinkedQueue<>(batch);
+        final Map<String, Long> entryTimes = new ConcurrentHashMap<>();
+        final AtomicInteger remaining = new AtomicInteger(queue.size());
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                StagingArea.Staged staged;
+                while ((staged = queue.poll()) != null) {
+                    long entryStartTime = SystemClock.uptimeMillis();
+                    try {
+                        preloadEntry(staged.dataClass, staged);
+                    } catch (RuntimeException ex) {
+                        //staged entry is already finished with error, continue with other entries
+                        Log.e(TAG, "failed to preload " + staged.key, ex);
+                    } finally {
+                        entryTimes.put(staged.key, SystemClock.uptimeMillis() - entryStartTime);
+                        if (remaining.decrementAndGet() == 0) {
+                            onPreloaded(SystemClock.uptimeMillis() - startTime, entryTimes, callback);
+                        }
+                    }
+                }
+            }
+        };
+
+        if (queue.isEmpty()) {
+            onPreloaded(0, entryTimes, callback);
+        }
+        int workers = Math.min(queue.size(), preloadParallelism);
+        for (int i = 0; i < workers; i++) {
+            readExecutor.execute(worker);
+        }
+        return batch;
+    }
+
+    /**
+     * Preloads entries of cache and creates them with preloaded data.
+     * @param cache cache to get entries from
+     * @param keyFactory factory to get data classes of keys
+     * @param keys keys of entries
+     * @param callback optional callback called on callback executor after entries are created
+     */
+    public void preload(final Cache cache, EntryKeyFactory keyFactory, Collection<String> keys,
+                        final PreloadCallback callback) {
+        final Map<String, Class<?>> entries = new LinkedHashMap<>();
+        for (String key : keys) {
+            try {
+                entries.put(key, keyFactory.getKeyParams(key).getKeyClass());
+            } catch (IllegalArgumentException ex) {
+                if (debugMode) Log.w(TAG, "unable to preload " + key + ": " + ex.getMessage());
+            }
+        }
+
+        preload(entries, new PreloadCallback() {
+            @Override
+            public void onPreloaded(long totalTime, Map<String, Long> entryTimes) {
+                for (String key : entries.keySet()) {
+                    cache.get(key);
+                }
+                if (callback != null) callback.onPreloaded(totalTime, entryTimes);
+            }
+        });
+    }
+
+    private <T> void preloadEntry(Class<T> dataClass, StagingArea.Staged staged) {
+        SerializationTask<T> task = new SerializationTask<>(dataClass,
+                version,
+                staged.key,
+                null,
+                defaultDataCallback,
+                dataSerializer,
+                convertToFileName(staged.key),
+                getCorruptedDir(),
+                mappedReadThreshold,
+                legacyFilesTime,
+                deflateCodec,
+                quota,
+                callbackExecutor,
+                debugMode);
+        boolean success = false;
+        try {
+            success = task.executeNow();
+        } finally {
+            stagingArea.finish(staged, success, success ? task.getResult() : null);
+        }
+    }
+
+    private void onPreloaded(final long totalTime, final Map<String, Long> entryTimes,
+                             final PreloadCallback callback) {
+        if (debugMode) Log.d(TAG, String.format("preload of %d entries: time = %dms",
+                entryTimes.size(), totalTime));
+        if (callback == null) return;
+
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.onPreloaded(totalTime, Collections.unmodifiableMap(entryTimes));
+            }
+        });
+    }
+
     @Override
     public <T> void delete(Class<T> dataClass, String key) {
+        stagingArea.invalidate(key);
         if (!delete(convertToFileName(key))) {
             markAsDeleted(dataClass, key);
         } else {
@@ -135,27 +501,57 @@ public class FileStorage implements DataStorage {
     }
 
     private <T> void markAsDeleted(Class<T> dataClass, String qualifier) {
-        getPreferences().edit().putBoolean("deleted-" + dataClass.getName() + qualifier, true).commit();
+        if (deletedKeys.add(dataClass.getName() + qualifier)) {
+            persistDeletedKeys();
+        }
     }
 
     private <T> boolean isMarkedAsDeleted(Class<T> dataClass, String qualifier) {
-        return getPreferences().getBoolean("deleted-" + dataClass.getName() + qualifier, false);
+        return !deletedKeys.isEmpty() && deletedKeys.contains(dataClass.getName() + qualifier);
     }
 
     private <T> void removeDeletedMark(Class<T> dataClass, String qualifier) {
-        getPreferences().edit().remove("deleted-" + dataClass.getName() + qualifier).commit();
+        if (!deletedKeys.isEmpty() && deletedKeys.remove(dataClass.getName() + qualifier)) {
+            persistDeletedKeys();
+        }
+    }
+
+    /**
+     * Saves deleted keys on write executor, so they are saved before following write tasks. Changes made before
+     * task is started are saved together.
+     */
+    private void persistDeletedKeys() {
+        if (!deletedKeysPersistScheduled.compareAndSet(false, true)) return;
+
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                deletedKeysPersistScheduled.set(false);
+                getPreferences().edit().putStringSet(DELETED_KEYS, new HashSet<>(deletedKeys)).apply();
+            }
+        });
     }
 
     protected boolean delete(File file) {
-        if (file.exists()) {
-            return file.delete();
-        } else {
-            return true;
+        if (file.exists() && !file.delete()) {
+            return false;
         }
+        if (quota != null) quota.onDeleted(file);
+        return true;
     }
 
     protected File convertToFileName(String key) {
-        return new File(getCacheDir(), Hashes.getSHA1(key));
+        File file;
+        synchronized (fileNames) {
+            file = fileNames.get(key);
+        }
+        if (file == null) {
+            file = new File(getCacheDir(), Hashes.getSHA1(key));
+            synchronized (fileNames) {
+                fileNames.put(key, file);
+            }
+        }
+        return file;
     }
 
     private boolean cleanUpCache() {
@@ -168,14 +564,33 @@ public class FileStorage implements DataStorage {
     }
 
     private File getCacheDir() {
-        return new File(context.getFilesDir(), CACHE_DIR_FILENAME);
+        return cacheDir;
+    }
+
+    private File getCorruptedDir() {
+        return new File(getCacheDir(), CORRUPTED_DIR_FILENAME);
+    }
+
+    /**
+     * Options of data class from {@link com.shaubert.cache.persistance.PersistableData PersistableData}.
+     */
+    private static class ClassOptions {
+        final boolean compress;
+        final boolean immutable;
+
+        ClassOptions(PersistableData annotation) {
+            compress = annotation != null && annotation.compress();
+            immutable = annotation != null && annotation.immutable();
+        }
     }
 
-    private static class SerializationAsyncTask<T> extends AsyncTask<Void, Void, Boolean> {
+    private static class SerializationTask<T> implements Runnable {
 
-        public final String TAG = SerializationAsyncTask.class.getSimpleName();
+        public final String TAG = SerializationTask.class.getSimpleName();
 
-        private byte[] dataBytes;
+        private final boolean saving;
+        private T data;
+        private ByteBufferOutputStream dataOutput;
         private final int storageVersion;
         private Class<T> dataClass;
         private String key;
@@ -183,43 +598,127 @@ public class FileStorage implements DataStorage {
         private StorageLoadCallback<T> loadCallback;
         private DataSerializer serializer;
         private File dataFile;
+        private File corruptedDir;
+        private long mappedReadThreshold;
+        private long legacyFilesTime;
+        private long compressionThreshold;
+        private DeflateCodec deflateCodec;
+        private DiskQuota quota;
         private T deserializedResult;
         private DefaultDataCallback defaultDataCallback;
+        private Executor callbackExecutor;
         private boolean debugMode;
+        private boolean cancelled;
+        private final boolean applicable;
 
         @SuppressWarnings("unchecked")
-        public SerializationAsyncTask(T data, int storageVersion, StorageSaveCallback<T> callback,
-                                      DataSerializer serializer, File output, boolean debugMode) {
+        public SerializationTask(T data, int storageVersion, String key, StorageSaveCallback<T> callback,
+                                 DataSerializer serializer, File output, long compressionThreshold,
+                                 DeflateCodec deflateCodec, boolean immutable, DiskQuota quota,
+                                 Executor callbackExecutor, boolean debugMode) {
+            this.saving = true;
             this.storageVersion = storageVersion;
+            this.key = key;
             this.debugMode = debugMode;
             this.dataClass = (Class<T>) data.getClass();
             this.saveCallback = callback;
             this.serializer = serializer;
             this.dataFile = output;
+            this.compressionThreshold = compressionThreshold;
+            this.deflateCodec = deflateCodec;
+            this.quota = quota;
+            this.callbackExecutor = callbackExecutor;
+            this.applicable = serializer.isApplicable(dataClass);
 
-            makeDataBytes(data);
+            if (immutable) {
+                //serialize on write executor, data can't be changed meanwhile
+                this.data = data;
+            } else {
+                makeDataOutput(data);
+            }
         }
 
-        public SerializationAsyncTask(Class<T> dataClass, int storageVersion, String key, StorageLoadCallback<T> callback,
-                                      DefaultDataCallback defaultDataCallback, DataSerializer serializer, File input,
-                                      boolean debugMode) {
+        public SerializationTask(Class<T> dataClass, int storageVersion, String key, StorageLoadCallback<T> callback,
+                                 DefaultDataCallback defaultDataCallback, DataSerializer serializer, File input,
+                                 File corruptedDir, long mappedReadThreshold, long legacyFilesTime,
+                                 DeflateCodec deflateCodec, DiskQuota quota, Executor callbackExecutor,
+                                 boolean debugMode) {
+            this.saving = false;
             this.dataClass = dataClass;
             this.storageVersion = storageVersion;
             this.loadCallback = callback;
             this.serializer = serializer;
             this.dataFile = input;
+            this.corruptedDir = corruptedDir;
+            this.mappedReadThreshold = mappedReadThreshold;
+            this.legacyFilesTime = legacyFilesTime;
+            this.deflateCodec = deflateCodec;
+            this.quota = quota;
             this.key = key;
             this.defaultDataCallback = defaultDataCallback;
+            this.callbackExecutor = callbackExecutor;
             this.debugMode = debugMode;
+            this.applicable = serializer.isApplicable(dataClass);
+        }
+
+        public void executeOn(Executor executor) {
+            if (cancelled) {
+                postResult();
+            } else {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            postResult();
+        }
+
+        /**
+         * Executes task on calling thread without callbacks.
+         * @return true if task succeeded
+         */
+        boolean executeNow() {
+            try {
+                return !cancelled && doInBackground();
+            } finally {
+                if (dataOutput != null) dataOutput.release();
+            }
+        }
+
+        T getResult() {
+            return deserializedResult;
         }
 
-        private void makeDataBytes(T data) {
-            if (!serializer.isApplicable(dataClass)) return;
+        private void postResult() {
+            boolean result = false;
+            try {
+                result = !cancelled && doInBackground();
+            } finally {
+                if (dataOutput != null) dataOutput.release();
+                //callback is delivered even if error is rethrown in debug mode
+                postResult(result);
+            }
+        }
+
+        private void postResult(final boolean result) {
+            callbackExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (cancelled) {
+                        onCancelled();
+                    } else {
+                        onPostExecute(result);
+                    }
+                }
+            });
+        }
+
+        private void makeDataOutput(T data) {
+            if (!applicable) return;
 
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024 * 8);
             try {
-                serializer.serialize(data, outputStream);
-                dataBytes = outputStream.toByteArray();
+                dataOutput = serialize(data);
             } catch (IOException ex) {
                 if (debugMode) Log.e(TAG, "failed to make copy of " + data, ex);
             } catch (Throwable ex) {
@@ -228,29 +727,34 @@ public class FileStorage implements DataStorage {
                     throw new RuntimeException(ex);
                 }
             } finally {
-                if (dataBytes == null) {
-                    cancel(false);
+                if (dataOutput == null) {
+                    cancelled = true;
                 }
             }
         }
 
-        @Override
-        protected Boolean doInBackground(Void... params) {
-            if (isCancelled()) return false;
+        private ByteBufferOutputStream serialize(T data) throws IOException {
+            return ByteBufferOutputStream.serialize(serializer, data);
+        }
 
-            if (serializer.isApplicable(dataClass)) {
-                OutputStream outputStream = null;
+        private boolean doInBackground() {
+            if (applicable) {
                 InputStream inputStream = null;
                 try {
                     long startTime = SystemClock.uptimeMillis();
-                    if (dataBytes != null) {
-                        outputStream = new FileOutputStream(dataFile);
-                        outputStream.write(dataBytes);
+                    if (saving) {
+                        if (dataOutput == null) {
+                            dataOutput = serialize(data);
+                            data = null;
+                        }
+                        writeDataFile();
+                        if (quota != null) quota.onWritten(dataFile);
                     } else {
                         boolean overrideLoading = defaultDataCallback != null
                                 && defaultDataCallback.hasDefaultDataFor(dataClass, key, storageVersion);
                         if (!overrideLoading && dataFile.exists() && dataFile.length() > 0) {
-                            inputStream = new FileInputStream(dataFile);
+                            deserializedResult = readDataFile();
+                            if (quota != null) quota.onRead(dataFile);
                         } else if (overrideLoading || defaultDataCallback != null) {
                             inputStream = defaultDataCallback.getDefaultDataFor(dataClass, key, storageVersion);
                         }
@@ -259,13 +763,17 @@ public class FileStorage implements DataStorage {
                         }
                     }
                     if (debugMode) Log.d(TAG, String.format("%s of %s: time = %dms, size = %db",
-                            dataBytes == null ? "deserialization" : "serialization",
+                            saving ? "serialization" : "deserialization",
                             dataClass.getSimpleName(),
                             SystemClock.uptimeMillis() - startTime,
                             dataFile.exists() ? dataFile.length() : 0));
                     return true;
                 } catch (FileNotFoundException e) {
                     if (debugMode) Log.e(TAG, "cache entry not found for " + dataClass, e);
+                } catch (RecordFormat.CorruptedDataException ex) {
+                    if (debugMode) Log.w(TAG, "corrupted cache entry of " + dataClass + ": " + ex.getMessage());
+                    quarantine();
+                    if (quota != null) quota.onDeleted(dataFile);
                 } catch (IOException ex) {
                     if (debugMode) Log.e(TAG, "failed to perform cache operation for " + dataClass, ex);
                 } catch (Throwable ex) {
@@ -280,22 +788,133 @@ public class FileStorage implements DataStorage {
                         } catch (IOException ignored) {
                         }
                     }
-                    if (outputStream != null) {
-                        try {
-                            outputStream.close();
-                        } catch (IOException ignored) {
-                        }
-                    }
                 }
             }
             return false;
         }
 
-        @Override
-        protected void onPostExecute(Boolean result) {
+        /**
+         * Moves data file to corrupted dir, only {@link #MAX_CORRUPTED_FILES} recently corrupted files are kept.
+         */
+        private void quarantine() {
+            if (Files.moveTo(dataFile, corruptedDir)) {
+                //renaming keeps modification time, it's updated to keep the latest files
+                //noinspection ResultOfMethodCallIgnored
+                new File(corruptedDir, dataFile.getName()).setLastModified(System.currentTimeMillis());
+                Files.deleteOldest(corruptedDir, MAX_CORRUPTED_FILES);
+            } else {
+                //noinspection ResultOfMethodCallIgnored
+                dataFile.delete();
+            }
+        }
+
+        private void writeDataFile() throws IOException {
+            ByteBufferOutputStream stored = dataOutput;
+            ByteBufferOutputStream compressed = null;
+            int flags = 0;
+            try {
+                if (dataOutput.size() >= compressionThreshold) {
+                    compressed = deflateCodec.deflate(dataOutput, ByteBufferPool.shared());
+                    if (compressed.size() < dataOutput.size()) {
+                        stored = compressed;
+                        flags |= RecordFormat.FLAG_DEFLATE;
+                    }
+                }
+
+                long size = stored.size();
+                if (size > Integer.MAX_VALUE) {
+                    throw new IOException("data is too large: " + size);
+                }
+                ByteBuffer[] data = stored.data();
+                byte[] header = RecordFormat.createHeader(key, flags, (int) size, RecordFormat.crc(data));
+                Files.writeAtomically(dataFile, ByteBuffer.wrap(header), data);
+            } finally {
+                if (compressed != null) compressed.release();
+            }
+        }
+
+        private T readDataFile() throws IOException {
+            ByteBuffer data = checkRecord(readFile());
+            if (data == null) {
+                return null;
+            }
+            if (serializer instanceof ByteBufferSerializer) {
+                return ((ByteBufferSerializer) serializer).deserialize(dataClass, data);
+            } else {
+                return serializer.deserialize(dataClass, new ByteBufferInputStream(data));
+            }
+        }
+
+        /**
+         * Reads data file with one read or maps it to memory if it's large.
+         */
+        private ByteBuffer readFile() throws IOException {
+            RandomAccessFile file = new RandomAccessFile(dataFile, "r");
+            try {
+                FileChannel channel = file.getChannel();
+                long size = channel.size();
+                if (size > Integer.MAX_VALUE) {
+                    throw new IOException("file is too large: " + size);
+                }
+                if (size >= mappedReadThreshold) {
+                    return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                }
+
+                ByteBuffer buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) break;
+                }
+                buffer.flip();
+                return buffer;
+            } finally {
+                try {
+                    file.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        /**
+         * Checks header of file.
+         * @param fileBuffer file content
+         * @return serialized data or null if file contains data of another key
+         * @throws RecordFormat.CorruptedDataException if file is truncated, data is broken or file has no
+         * header and it's not written by previous version of library
+         */
+        private ByteBuffer checkRecord(ByteBuffer fileBuffer) throws IOException {
+            RecordFormat.Header header = RecordFormat.readHeader(fileBuffer);
+            if (header == null) {
+                if (dataFile.lastModified() > legacyFilesTime) {
+                    throw new RecordFormat.CorruptedDataException("missing header");
+                }
+                //file was written before header was introduced
+                return fileBuffer;
+            }
+            if ((header.flags & ~RecordFormat.KNOWN_FLAGS) != 0) {
+                throw new RecordFormat.CorruptedDataException("unknown flags " + header.flags);
+            }
+            if (header.size + (long) header.dataLength != fileBuffer.limit()) {
+                throw new RecordFormat.CorruptedDataException("unexpected file length " + fileBuffer.limit()
+                        + ", expected " + (header.size + header.dataLength));
+            }
+            if (!key.equals(header.key)) {
+                return null;
+            }
+
+            ByteBuffer data = fileBuffer.slice();
+            if (RecordFormat.crc(data) != header.dataCrc) {
+                throw new RecordFormat.CorruptedDataException("checksum mismatch");
+            }
+            if ((header.flags & RecordFormat.FLAG_DEFLATE) != 0) {
+                data = deflateCodec.inflate(data);
+            }
+            return data;
+        }
+
+        private void onPostExecute(boolean result) {
             if (saveCallback != null || loadCallback != null) {
                 if (result) {
-                    if (dataBytes != null) {
+                    if (saving) {
                         if (saveCallback != null) saveCallback.onSuccess();
                     } else {
                         if (deserializedResult == null) {
@@ -305,7 +924,7 @@ public class FileStorage implements DataStorage {
                         }
                     }
                 } else {
-                    if (dataBytes != null) {
+                    if (saving) {
                         if (saveCallback != null) saveCallback.onError();
                     } else {
                         if (loadCallback != null) loadCallback.onError();
@@ -314,8 +933,7 @@ public class FileStorage implements DataStorage {
             }
         }
 
-        @Override
-        protected void onCancelled() {
+        private void onCancelled() {
             if (saveCallback != null) saveCallback.onError();
             if (loadCallback != null) loadCallback.onError();
         }
@@ -330,11 +948,29 @@ public class FileStorage implements DataStorage {
     }
 
     public static final class Builder {
+        static final int DEFAULT_READ_PARALLELISM = 2;
+        static final int DEFAULT_THREAD_PRIORITY = Thread.NORM_PRIORITY - 1;
+        static final long DEFAULT_MAPPED_READ_THRESHOLD = 256 * 1024;
+        static final long DEFAULT_PRELOAD_RETAIN_TIME = 30 * 1000;
+
         private int version = -1;
         private Context context;
         private DataSerializer dataSerializer;
         private DefaultDataCallback defaultDataCallback;
         private boolean debugMode;
+        private Executor readExecutor;
+        private Executor writeExecutor;
+        private Executor callbackExecutor;
+        private ScheduledExecutorService scheduler;
+        private int readParallelism = DEFAULT_READ_PARALLELISM;
+        private int threadPriority = DEFAULT_THREAD_PRIORITY;
+        private long preloadRetainTime = DEFAULT_PRELOAD_RETAIN_TIME;
+        private long mappedReadThreshold = DEFAULT_MAPPED_READ_THRESHOLD;
+        private long compressionThreshold = Long.MAX_VALUE;
+        private int hotKeysMax;
+        private long hotKeysRecordTime;
+        private long maxBytes;
+        private EvictionCallback evictionCallback;
 
         private Builder(Context context) {
             this.context = context.getApplicationContext();
@@ -376,6 +1012,145 @@ public class FileStorage implements DataStorage {
             return this;
         }
 
+        /**
+         * @param readExecutor executor for loading operations. By default storage creates own executor with
+         *                     {@link #readParallelism(int) readParallelism} threads.
+         * @return this
+         */
+        public Builder readExecutor(Executor readExecutor) {
+            this.readExecutor = readExecutor;
+            return this;
+        }
+
+        /**
+         * @param writeExecutor executor for saving operations, it should execute tasks one by one in order of
+         *                      submission. By default storage creates own single thread executor.
+         * @return this
+         */
+        public Builder writeExecutor(Executor writeExecutor) {
+            this.writeExecutor = writeExecutor;
+            return this;
+        }
+
+        /**
+         * @param callbackExecutor executor to call {@link com.shaubert.cache.persistance.StorageLoadCallback
+         *                         StorageLoadCallback} and {@link com.shaubert.cache.persistance.StorageSaveCallback
+         *                         StorageSaveCallback} on. By default callbacks are called on main thread.
+         * @return this
+         */
+        public Builder callbackExecutor(Executor callbackExecutor) {
+            this.callbackExecutor = callbackExecutor;
+            return this;
+        }
+
+        /**
+         * @param scheduler executor to schedule expiration of preloaded data and end of
+         *                  {@link #prefetchHotKeys(int, long, TimeUnit) hot keys} recording on.
+         *                  By default storage creates own single thread scheduler.
+         * @return this
+         */
+        public Builder scheduler(ScheduledExecutorService scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * @param readParallelism number of threads of default read executor, 2 by default
+         * @return this
+         */
+        public Builder readParallelism(int readParallelism) {
+            if (readParallelism <= 0) throw new IllegalArgumentException("readParallelism should be positive");
+            this.readParallelism = readParallelism;
+            return this;
+        }
+
+        /**
+         * @param threadPriority {@link java.lang.Thread Thread} priority of default executors,
+         *                       {@code Thread.NORM_PRIORITY - 1} by default
+         * @return this
+         */
+        public Builder threadPriority(int threadPriority) {
+            if (threadPriority < Thread.MIN_PRIORITY || threadPriority > Thread.MAX_PRIORITY) {
+                throw new IllegalArgumentException("illegal thread priority: " + threadPriority);
+            }
+            this.threadPriority = threadPriority;
+            return this;
+        }
+
+        /**
+         * @param time time after {@link FileStorage#preload(Map, PreloadCallback) preload()} call when
+         *             preloaded data that was not loaded yet is dropped, 30 seconds by default
+         * @param unit unit of time
+         * @return this
+         */
+        public Builder preloadRetainTime(long time, TimeUnit unit) {
+            if (time <= 0) throw new IllegalArgumentException("preloadRetainTime should be positive");
+            this.preloadRetainTime = unit.toMillis(time);
+            return this;
+        }
+
+        /**
+         * @param mappedReadThreshold files of this size or larger are mapped to memory instead of copying
+         *                            them to heap, 256 KB by default
+         * @return this
+         */
+        public Builder mappedReadThreshold(long mappedReadThreshold) {
+            if (mappedReadThreshold < 0) throw new IllegalArgumentException("mappedReadThreshold should not be negative");
+            this.mappedReadThreshold = mappedReadThreshold;
+            return this;
+        }
+
+        /**
+         * @param compressionThreshold serialized data of this size or larger is compressed with deflate.
+         *                             By default only data of classes with
+         *                             {@link PersistableData#compress() PersistableData.compress()} is compressed.
+         * @return this
+         */
+        public Builder compressionThreshold(long compressionThreshold) {
+            if (compressionThreshold < 0) throw new IllegalArgumentException("compressionThreshold should not be negative");
+            this.compressionThreshold = compressionThreshold;
+            return this;
+        }
+
+        /**
+         * @param maxBytes max total size of stored files. When it's exceeded least recently used files are
+         *                 deleted. Files of interrupted writes are deleted on start. Corrupted files are not
+         *                 counted, only 8 recently corrupted files are kept regardless of this limit.
+         *                 By default size is not limited.
+         * @return this
+         */
+        public Builder maxBytes(long maxBytes) {
+            if (maxBytes <= 0) throw new IllegalArgumentException("maxBytes should be positive");
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * @param evictionCallback optional callback of entries deleted because of {@link #maxBytes(long) maxBytes}
+         *                         limit, it's called on callback executor
+         * @return this
+         */
+        public Builder evictionCallback(EvictionCallback evictionCallback) {
+            this.evictionCallback = evictionCallback;
+            return this;
+        }
+
+        /**
+         * Records keys loaded in the first {@code recordTime} of session. On the next start these keys are
+         * {@link FileStorage#preload(Map, PreloadCallback) preloaded} in background.
+         * @param maxKeys max number of recorded keys
+         * @param recordTime time from storage creation when keys are recorded
+         * @param unit unit of recordTime
+         * @return this
+         */
+        public Builder prefetchHotKeys(int maxKeys, long recordTime, TimeUnit unit) {
+            if (maxKeys <= 0) throw new IllegalArgumentException("maxKeys should be positive");
+            if (recordTime <= 0) throw new IllegalArgumentException("recordTime should be positive");
+            this.hotKeysMax = maxKeys;
+            this.hotKeysRecordTime = unit.toMillis(recordTime);
+            return this;
+        }
+
         /**
          * Build storage or throw exception if version not set
          * @return created storage
@@ -385,6 +1160,16 @@ public class FileStorage implements DataStorage {
                 throw new IllegalArgumentException("provide storage version");
             }
             if (dataSerializer == null) dataSerializer = new JavaSerializer();
+            if (readExecutor == null) {
+                readExecutor = StorageExecutors.newExecutor("data-storage-read", readParallelism, threadPriority);
+            }
+            if (writeExecutor == null) {
+                writeExecutor = StorageExecutors.newExecutor("data-storage-write", 1, threadPriority);
+            }
+            if (callbackExecutor == null) callbackExecutor = new MainThreadExecutor();
+            if (scheduler == null) {
+                scheduler = StorageExecutors.newScheduledExecutor("data-storage-scheduler", threadPriority);
+            }
             return new FileStorage(this);
         }
     }
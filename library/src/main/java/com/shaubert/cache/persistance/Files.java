@@ -6,6 +6,12 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
 
 class Files {
 
@@ -59,6 +65,83 @@ class Files {
         return false;
     }
 
+    /**
+     * Writes parts to temporary file, syncs it and renames it to target file, so target file contains either
+     * previous or new data even if process is killed during write.
+     */
+    public static void writeAtomically(File file, ByteBuffer header, ByteBuffer... data) throws IOException {
+        ByteBuffer[] parts = new ByteBuffer[data.length + 1];
+        parts[0] = header;
+        System.arraycopy(data, 0, parts, 1, data.length);
+        long remaining = 0;
+        for (ByteBuffer part : parts) {
+            remaining += part.remaining();
+        }
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        FileOutputStream outputStream = new FileOutputStream(tempFile);
+        boolean written = false;
+        try {
+            FileChannel channel = outputStream.getChannel();
+            while (remaining > 0) {
+                remaining -= channel.write(parts);
+            }
+            channel.force(false);
+            written = true;
+        } finally {
+            try {
+                outputStream.close();
+            } catch (IOException ignored) {
+            }
+            if (!written) {
+                //noinspection ResultOfMethodCallIgnored
+                tempFile.delete();
+            }
+        }
+
+        if (!tempFile.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            throw new IOException("failed to rename " + tempFile + " to " + file);
+        }
+    }
+
+    /**
+     * Moves file to directory replacing file with the same name.
+     */
+    public static boolean moveTo(File file, File dir) {
+        if (!dir.exists() && !dir.mkdirs()) {
+            return false;
+        }
+        File target = new File(dir, file.getName());
+        return (!target.exists() || target.delete()) && file.renameTo(target);
+    }
+
+    /**
+     * Deletes least recently modified files of directory, so it contains at most maxFiles files.
+     */
+    public static void deleteOldest(File dir, int maxFiles) {
+        File[] files = dir.listFiles();
+        if (files == null || files.length <= maxFiles) return;
+
+        final Map<File, Long> lastModified = new HashMap<>();
+        for (File file : files) {
+            lastModified.put(file, file.lastModified());
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsModified = lastModified.get(lhs);
+                long rhsModified = lastModified.get(rhs);
+                return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length - maxFiles; i++) {
+            //noinspection ResultOfMethodCallIgnored
+            files[i].delete();
+        }
+    }
+
     public static boolean deleteDir(File file) {
         if (file.isDirectory()) {
             File[] files = file.listFiles();
@@ -1,27 +1,41 @@
 package com.shaubert.cache.persistance;
 
+import java.nio.charset.Charset;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 class Hashes {
 
-    public static String getSHA1(String text) {
-        try {
-            MessageDigest md5 = MessageDigest.getInstance("SHA1");
-            byte[] textBytes = text.getBytes();
-            byte[] result = md5.digest(textBytes);
-            return bytesToHex(result);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<MessageDigest> SHA1 = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA1");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
         }
+    };
+
+    public static String getSHA1(String text) {
+        MessageDigest sha1 = SHA1.get();
+        //digest() resets state, so instance is ready for the next call
+        byte[] result = sha1.digest(text.getBytes(UTF_8));
+        return bytesToHex(result);
     }
 
     public static String bytesToHex(byte[] bytes) {
-        StringBuilder sb = new StringBuilder();
-        for (byte b : bytes) {
-            sb.append(String.format("%02x", b));
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xff;
+            chars[i * 2] = HEX_DIGITS[b >>> 4];
+            chars[i * 2 + 1] = HEX_DIGITS[b & 0x0f];
         }
-        return sb.toString();
+        return new String(chars);
     }
 
 }
@@ -0,0 +1,122 @@
+package com.shaubert.cache.persistance;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records keys loaded in the beginning of session, so they can be prefetched on the next start.
+ * File contains number of keys (int) and pairs of data class name and key written with
+ * {@link java.io.DataOutputStream#writeUTF(String) writeUTF()}.
+ */
+class HotKeysManifest {
+
+    public static final String TAG = HotKeysManifest.class.getSimpleName();
+
+    private final File file;
+    private final int maxKeys;
+    private final long recordTime;
+    private final Map<String, String> recorded = new LinkedHashMap<>();
+    private long startTime;
+    private boolean recording;
+
+    /**
+     * @param file manifest file
+     * @param maxKeys max number of recorded keys
+     * @param recordTime time in milliseconds from {@link #startRecording()} when keys are recorded
+     */
+    HotKeysManifest(File file, int maxKeys, long recordTime) {
+        this.file = file;
+        this.maxKeys = maxKeys;
+        this.recordTime = recordTime;
+    }
+
+    /**
+     * @return keys and classes recorded in previous session, keys of missing classes are skipped
+     */
+    Map<String, Class<?>> read() {
+        Map<String, Class<?>> result = new LinkedHashMap<>();
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                String className = input.readUTF();
+                String key = input.readUTF();
+                try {
+                    result.put(key, Class.forName(className));
+                } catch (ClassNotFoundException ignored) {
+                }
+            }
+        } catch (FileNotFoundException ignored) {
+        } catch (EOFException ex) {
+            Log.w(TAG, "hot keys manifest is truncated");
+        } catch (IOException ex) {
+            Log.w(TAG, "failed to read hot keys manifest", ex);
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        return result;
+    }
+
+    synchronized void startRecording() {
+        startTime = SystemClock.uptimeMillis();
+        recording = true;
+    }
+
+    /**
+     * @return true if recording should be stopped: time is over or max number of keys is recorded
+     */
+    synchronized boolean record(String key, Class<?> dataClass) {
+        if (!recording) return false;
+        if (SystemClock.uptimeMillis() - startTime > recordTime) return true;
+
+        if (!recorded.containsKey(key)) {
+            recorded.put(key, dataClass.getName());
+        }
+        return recorded.size() >= maxKeys;
+    }
+
+    /**
+     * @return recorded keys or null if recording is already stopped
+     */
+    synchronized Map<String, String> stopRecording() {
+        if (!recording) return null;
+
+        recording = false;
+        return new LinkedHashMap<>(recorded);
+    }
+
+    /**
+     * @param keys keys and data class names
+     */
+    void write(Map<String, String> keys) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(keys.size());
+        for (Map.Entry<String, String> entry : keys.entrySet()) {
+            output.writeUTF(entry.getValue());
+            output.writeUTF(entry.getKey());
+        }
+        output.flush();
+        Files.writeAtomically(file, ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+}
@@ -0,0 +1,848 @@
+package com.shaubert.cache.persistance;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.util.Log;
+import com.shaubert.cache.MainThreadExecutor;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Log-structured persistent storage. All records are appended to segment files,
+ * in-memory index maps key to record position, so loading is one positioned read.
+ * {@link #delete(Class, String) delete()} appends tombstone record instead of file system operation.
+ * Space of overwritten and deleted records is reclaimed by background compaction.
+ * <p>
+ * Index is built on first operation by scanning segment files. Use it instead of
+ * {@link com.shaubert.cache.persistance.FileStorage FileStorage} if you have a lot of small entries.
+ * <p>
+ * Appends are synced to disk once per batch of queued writes, save callbacks are called after sync.
+ * Unlike {@link com.shaubert.cache.persistance.FileStorage FileStorage} records are not compressed,
+ * {@link PersistableData#compress() compress} and {@link PersistableData#immutable() immutable} options
+ * are ignored (data is always serialized on calling thread) and total size is not limited.
+ * <p>
+ * Segment record format:
+ * <pre>
+ * CRC32 of rest of record   int
+ * key length                unsigned short
+ * data length               int, -1 for tombstone
+ * key                       UTF-8 bytes
+ * data                      serialized object
+ * </pre>
+ */
+public class LogStorage implements DataStorage {
+
+    public static final String TAG = LogStorage.class.getSimpleName();
+
+    private static final String STORAGE_VERSION = "log-storage-version";
+
+    private static final String STORAGE_DIR_FILENAME = Hashes.getSHA1("log-storage");
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final int RECORD_HEADER_SIZE = 10;
+    private static final int TOMBSTONE = -1;
+    private static final int MAX_KEY_LENGTH = 0xFFFF;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final int version;
+    private final Context context;
+    private final DataSerializer dataSerializer;
+    private final boolean debugMode;
+    private final long maxSegmentSize;
+    private final float compactionThreshold;
+    private final long minCompactionBytes;
+    private final Executor readExecutor;
+    private final Executor writeExecutor;
+    private final Executor callbackExecutor;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Location> index = new HashMap<>();
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private Segment activeSegment;
+    private volatile boolean opened;
+    private volatile boolean compactionScheduled;
+
+    /**
+     * Callbacks of appended but not synced records, accessed on write executor only.
+     */
+    private final List<StorageSaveCallback<?>> unsyncedCallbacks = new ArrayList<>();
+    private boolean syncScheduled;
+
+    private LogStorage(Builder builder) {
+        this.version = builder.version;
+        this.context = builder.context;
+        this.dataSerializer = builder.dataSerializer;
+        this.debugMode = builder.debugMode;
+        this.maxSegmentSize = builder.maxSegmentSize;
+        this.compactionThreshold = builder.compactionThreshold;
+        this.minCompactionBytes = builder.minCompactionBytes;
+        this.readExecutor = builder.readExecutor;
+        this.writeExecutor = builder.writeExecutor;
+        this.callbackExecutor = builder.callbackExecutor;
+    }
+
+    public static Builder newBuilder(Context context) {
+        return new Builder(context);
+    }
+
+    @Override
+    public <T> void save(T data, final String key, final StorageSaveCallback<T> callback) {
+        final ByteBufferOutputStream dataOutput = makeDataOutput(data);
+        if (dataOutput == null) {
+            postSaveResult(callback, false);
+            return;
+        }
+
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean result = false;
+                try {
+                    long startTime = SystemClock.uptimeMillis();
+                    openIfNeeded();
+                    append(key, dataOutput);
+                    if (debugMode) Log.d(TAG, String.format("append of %s: time = %dms, size = %db",
+                            key, SystemClock.uptimeMillis() - startTime, dataOutput.size()));
+                    result = true;
+                } catch (IOException ex) {
+                    if (debugMode) Log.e(TAG, "failed to append " + key, ex);
+                } catch (RuntimeException ex) {
+                    postSaveResult(callback, false);
+                    throw ex;
+                } finally {
+                    dataOutput.release();
+                }
+                if (result) {
+                    unsyncedCallbacks.add(callback);
+                    scheduleSync();
+                } else {
+                    postSaveResult(callback, false);
+                }
+                compactIfNeeded();
+            }
+        });
+    }
+
+    @Override
+    public <T> void load(final Class<T> dataClass, final String key, final StorageLoadCallback<T> callback) {
+        readExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                T result = null;
+                boolean success = false;
+                try {
+                    long startTime = SystemClock.uptimeMillis();
+                    openIfNeeded();
+                    InputStream inputStream = read(key);
+                    if (inputStream != null && dataSerializer.isApplicable(dataClass)) {
+                        result = dataSerializer.deserialize(dataClass, inputStream);
+                    }
+                    if (debugMode) Log.d(TAG, String.format("deserialization of %s: time = %dms",
+                            dataClass.getSimpleName(), SystemClock.uptimeMillis() - startTime));
+                    success = true;
+                } catch (IOException ex) {
+                    if (debugMode) Log.e(TAG, "failed to load " + key, ex);
+                } catch (Throwable ex) {
+                    if (debugMode) Log.e(TAG, "unknown error when loading " + key, ex);
+                    if (debugMode) {
+                        postLoadResult(callback, false, null);
+                        throw new RuntimeException(ex);
+                    }
+                }
+                postLoadResult(callback, success, result);
+            }
+        });
+    }
+
+    @Override
+    public <T> void delete(Class<T> dataClass, final String key) {
+        lock.writeLock().lock();
+        try {
+            removeFromIndex(key);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    openIfNeeded();
+                    append(key, null);
+                    scheduleSync();
+                } catch (IOException ex) {
+                    if (debugMode) Log.e(TAG, "failed to append tombstone of " + key, ex);
+                }
+                compactIfNeeded();
+            }
+        });
+    }
+
+    private ByteBufferOutputStream makeDataOutput(Object data) {
+        if (!dataSerializer.isApplicable(data.getClass())) return null;
+
+        try {
+            return ByteBufferOutputStream.serialize(dataSerializer, data);
+        } catch (IOException ex) {
+            if (debugMode) Log.e(TAG, "failed to make copy of " + data, ex);
+        } catch (Throwable ex) {
+            if (debugMode) Log.e(TAG, "unknown error when copying " + data, ex);
+            if (debugMode) {
+                throw new RuntimeException(ex);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Schedules sync of active segment after appends that are already queued, so batch of appends is synced
+     * once. Called on write executor only.
+     */
+    private void scheduleSync() {
+        if (syncScheduled) return;
+
+        syncScheduled = true;
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                syncScheduled = false;
+                boolean result = false;
+                try {
+                    activeSegment.channel.force(false);
+                    result = true;
+                } catch (IOException ex) {
+                    if (debugMode) Log.e(TAG, "failed to sync " + activeSegment.file.getName(), ex);
+                }
+                for (StorageSaveCallback<?> callback : unsyncedCallbacks) {
+                    postSaveResult(callback, result);
+                }
+                unsyncedCallbacks.clear();
+            }
+        });
+    }
+
+    private <T> void postSaveResult(final StorageSaveCallback<T> callback, final boolean success) {
+        if (callback == null) return;
+
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (success) {
+                    callback.onSuccess();
+                } else {
+                    callback.onError();
+                }
+            }
+        });
+    }
+
+    private <T> void postLoadResult(final StorageLoadCallback<T> callback, final boolean success, final T result) {
+        if (callback == null) return;
+
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!success) {
+                    callback.onError();
+                } else if (result == null) {
+                    callback.onEmptyResult();
+                } else {
+                    callback.onSuccess(result);
+                }
+            }
+        });
+    }
+
+    @SuppressLint("CommitPrefEdits")
+    private void openIfNeeded() throws IOException {
+        if (opened) return;
+
+        lock.writeLock().lock();
+        try {
+            if (opened) return;
+
+            long startTime = SystemClock.uptimeMillis();
+            File dir = getStorageDir();
+            SharedPreferences preferences = context.getSharedPreferences("__sh_log_storage_prefs",
+                    Context.MODE_PRIVATE);
+            int oldVersion = preferences.getInt(STORAGE_VERSION, 0);
+            if (oldVersion < version) {
+                if (dir.exists() && !Files.deleteDir(dir)) {
+                    throw new IOException("unable to clean up storage dir");
+                }
+                preferences.edit().putInt(STORAGE_VERSION, version).commit();
+            }
+            if (!dir.exists() && !dir.mkdirs()) {
+                throw new IOException("unable to create storage dir");
+            }
+            Files.createNomedia(dir);
+
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    long id = parseSegmentId(file.getName());
+                    if (id >= 0) {
+                        segments.put(id, new Segment(id, file));
+                    }
+                }
+            }
+            for (Segment segment : segments.values()) {
+                scan(segment, segment == segments.lastEntry().getValue());
+            }
+            if (segments.isEmpty()) {
+                activeSegment = createSegment(0);
+            } else {
+                activeSegment = segments.lastEntry().getValue();
+            }
+
+            opened = true;
+            if (debugMode) Log.d(TAG, String.format("index of %d keys in %d segments built in %dms",
+                    index.size(), segments.size(), SystemClock.uptimeMillis() - startTime));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private File getStorageDir() {
+        return new File(context.getFilesDir(), STORAGE_DIR_FILENAME);
+    }
+
+    private static long parseSegmentId(String fileName) {
+        if (!fileName.startsWith(SEGMENT_PREFIX) || !fileName.endsWith(SEGMENT_SUFFIX)) return -1;
+
+        try {
+            return Long.parseLong(fileName.substring(SEGMENT_PREFIX.length(),
+                    fileName.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private Segment createSegment(long id) throws IOException {
+        Segment segment = new Segment(id, new File(getStorageDir(), SEGMENT_PREFIX + id + SEGMENT_SUFFIX));
+        segment.open();
+        segments.put(id, segment);
+        return segment;
+    }
+
+    /**
+     * Reads all records of segment to index. Broken tail of last segment (interrupted append) is truncated.
+     */
+    private void scan(Segment segment, boolean last) throws IOException {
+        segment.open();
+        DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(segment.file), 1024 * 32));
+        long position = 0;
+        long length = segment.file.length();
+        byte[] buffer = new byte[1024];
+        try {
+            while (position + RECORD_HEADER_SIZE <= length) {
+                int crc = input.readInt();
+                int keyLength = input.readUnsignedShort();
+                int dataLength = input.readInt();
+                long recordSize = RECORD_HEADER_SIZE + keyLength + (long) Math.max(dataLength, 0);
+                if (dataLength < TOMBSTONE || position + recordSize > length) break;
+
+                int bodyLength = keyLength + Math.max(dataLength, 0);
+                if (buffer.length < bodyLength) {
+                    buffer = new byte[bodyLength];
+                }
+                input.readFully(buffer, 0, bodyLength);
+                if (crc != recordCrc(keyLength, dataLength, buffer, 0, bodyLength)) break;
+
+                String key = new String(buffer, 0, keyLength, UTF_8);
+                segment.size = position + recordSize;
+                if (dataLength == TOMBSTONE) {
+                    removeFromIndex(key);
+                } else {
+                    putToIndex(key, new Location(segment, position, (int) recordSize, keyLength, dataLength));
+                }
+                position += recordSize;
+            }
+        } catch (EOFException ignored) {
+        } finally {
+            try {
+                input.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        if (segment.size < length) {
+            if (debugMode) Log.w(TAG, "broken record in " + segment.file.getName() + " at " + segment.size);
+            if (last) {
+                segment.channel.truncate(segment.size);
+            }
+        }
+    }
+
+    private static int recordCrc(int keyLength, int dataLength, byte[] body, int bodyOffset, int bodyLength) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(keyLength >>> 8);
+        crc32.update(keyLength);
+        crc32.update(dataLength >>> 24);
+        crc32.update(dataLength >>> 16);
+        crc32.update(dataLength >>> 8);
+        crc32.update(dataLength);
+        crc32.update(body, bodyOffset, bodyLength);
+        return (int) crc32.getValue();
+    }
+
+    /**
+     * Appends record to active segment. Called on write executor only.
+     * @param key key
+     * @param data data or null for tombstone
+     */
+    private void append(String key, ByteBufferOutputStream data) throws IOException {
+        byte[] keyBytes = key.getBytes(UTF_8);
+        if (keyBytes.length > MAX_KEY_LENGTH) {
+            throw new IOException("key is too long: " + key);
+        }
+        if (data != null && data.size() > Integer.MAX_VALUE - RECORD_HEADER_SIZE - keyBytes.length) {
+            throw new IOException("data is too large: " + data.size());
+        }
+
+        int dataLength = data != null ? (int) data.size() : TOMBSTONE;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE + keyBytes.length);
+        header.position(4);
+        header.putShort((short) keyBytes.length);
+        header.putInt(dataLength);
+        header.put(keyBytes);
+
+        ByteBuffer[] parts;
+        if (data != null) {
+            ByteBuffer[] dataParts = data.data();
+            parts = new ByteBuffer[dataParts.length + 1];
+            System.arraycopy(dataParts, 0, parts, 1, dataParts.length);
+        } else {
+            parts = new ByteBuffer[1];
+        }
+        parts[0] = header;
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(header.array(), 4, RECORD_HEADER_SIZE - 4);
+        crc32.update(keyBytes);
+        RecordFormat.update(crc32, Arrays.copyOfRange(parts, 1, parts.length));
+        header.putInt(0, (int) crc32.getValue());
+        header.flip();
+
+        appendRecord(key, parts, keyBytes.length, dataLength, null);
+    }
+
+    /**
+     * Appends prepared record to active segment. Called on write executor only.
+     * @param moved location of moved record or null for new record. Moved record is indexed only if key still
+     *              points to that location, so keys deleted or overwritten during compaction are not restored.
+     */
+    private void appendRecord(String key, ByteBuffer[] record, int keyLength, int dataLength,
+                              Location moved) throws IOException {
+        long remaining = 0;
+        for (ByteBuffer part : record) {
+            remaining += part.remaining();
+        }
+        int recordSize = (int) remaining;
+
+        if (activeSegment.size > 0 && activeSegment.size + recordSize > maxSegmentSize) {
+            //records of closed segment are synced here, next sync covers new active segment only
+            activeSegment.channel.force(false);
+            lock.writeLock().lock();
+            try {
+                activeSegment = createSegment(activeSegment.id + 1);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        Segment segment = activeSegment;
+        long position = segment.size;
+        writeFully(segment.channel, record, remaining, position);
+
+        lock.writeLock().lock();
+        try {
+            segment.size = position + recordSize;
+            if (moved != null) {
+                if (index.get(key) == moved) {
+                    putToIndex(key, new Location(segment, position, recordSize, keyLength, dataLength));
+                }
+            } else if (dataLength != TOMBSTONE) {
+                putToIndex(key, new Location(segment, position, recordSize, keyLength, dataLength));
+            } else {
+                removeFromIndex(key);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes buffers with gathering write. Reads use positioned reads, so channel position is changed
+     * on write executor only.
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer[] buffers, long remaining,
+                                   long position) throws IOException {
+        channel.position(position);
+        while (remaining > 0) {
+            remaining -= channel.write(buffers);
+        }
+    }
+
+    /**
+     * Reads record of key with one positioned read and checks it.
+     * @return record or null if there is no record of key
+     * @throws RecordFormat.CorruptedDataException if record is truncated or its checksum doesn't match
+     */
+    private ByteBuffer readRecord(String key, Location location) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(location.recordSize);
+        FileChannel channel = location.segment.channel;
+        long position = location.position;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new RecordFormat.CorruptedDataException("unexpected end of " + location.segment.file.getName());
+            }
+            position += read;
+        }
+        buffer.flip();
+
+        int bodyLength = location.recordSize - RECORD_HEADER_SIZE;
+        int crc = recordCrc(location.keyLength, location.dataLength, buffer.array(), RECORD_HEADER_SIZE, bodyLength);
+        if (buffer.getInt(0) != crc) {
+            throw new RecordFormat.CorruptedDataException("checksum mismatch of " + key);
+        }
+        return buffer;
+    }
+
+    private InputStream read(String key) throws IOException {
+        lock.readLock().lock();
+        try {
+            Location location = index.get(key);
+            if (location == null) return null;
+
+            ByteBuffer record = readRecord(key, location);
+            return new ByteArrayInputStream(record.array(),
+                    RECORD_HEADER_SIZE + location.keyLength, location.dataLength);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void putToIndex(String key, Location location) {
+        Location old = index.put(key, location);
+        if (old != null) {
+            old.segment.liveBytes -= old.recordSize;
+        }
+        location.segment.liveBytes += location.recordSize;
+    }
+
+    private void removeFromIndex(String key) {
+        Location old = index.remove(key);
+        if (old != null) {
+            old.segment.liveBytes -= old.recordSize;
+        }
+    }
+
+    private void compactIfNeeded() {
+        lock.readLock().lock();
+        try {
+            if (compactionScheduled || !opened) return;
+
+            long deadBytes = 0;
+            long totalBytes = 0;
+            for (Segment segment : segments.values()) {
+                if (segment == activeSegment) continue;
+                totalBytes += segment.size;
+                deadBytes += segment.size - segment.liveBytes;
+            }
+            if (deadBytes < minCompactionBytes || deadBytes < totalBytes * compactionThreshold) return;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        compactionScheduled = true;
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    compact();
+                } catch (IOException ex) {
+                    if (debugMode) Log.e(TAG, "compaction failed", ex);
+                } finally {
+                    compactionScheduled = false;
+                }
+            }
+        });
+    }
+
+    /**
+     * Moves live records of all not active segments to active segment and deletes these segments.
+     * Corrupted records are dropped. Called on write executor only.
+     */
+    private void compact() throws IOException {
+        long startTime = SystemClock.uptimeMillis();
+        List<Segment> compacting;
+        Map<String, Location> live = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            compacting = new ArrayList<>(segments.headMap(activeSegment.id).values());
+            for (Map.Entry<String, Location> entry : index.entrySet()) {
+                if (entry.getValue().segment != activeSegment) {
+                    live.put(entry.getKey(), entry.getValue());
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (compacting.isEmpty()) return;
+
+        int dropped = 0;
+        for (Map.Entry<String, Location> entry : live.entrySet()) {
+            String key = entry.getKey();
+            Location location = entry.getValue();
+            ByteBuffer record;
+            lock.readLock().lock();
+            try {
+                if (index.get(key) != location) continue;
+                record = readRecord(key, location);
+            } catch (RecordFormat.CorruptedDataException ex) {
+                if (debugMode) Log.w(TAG, "dropped corrupted record: " + ex.getMessage());
+                record = null;
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (record == null) {
+                //segment of the record is deleted below, so key is not restored on the next start
+                dropRecord(key, location);
+                dropped++;
+                continue;
+            }
+            appendRecord(key, new ByteBuffer[]{record}, location.keyLength, location.dataLength, location);
+        }
+
+        //moved records should be on disk before their old copies are deleted
+        activeSegment.channel.force(false);
+        lock.writeLock().lock();
+        try {
+            for (Segment segment : compacting) {
+                segments.remove(segment.id);
+                segment.close();
+                //noinspection ResultOfMethodCallIgnored
+                segment.file.delete();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (debugMode) Log.d(TAG, String.format("compaction of %d segments, %d keys, %d dropped: time = %dms",
+                compacting.size(), live.size(), dropped, SystemClock.uptimeMillis() - startTime));
+    }
+
+    private void dropRecord(String key, Location location) {
+        lock.writeLock().lock();
+        try {
+            if (index.get(key) == location) {
+                removeFromIndex(key);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static class Segment {
+        final long id;
+        final File file;
+        RandomAccessFile randomAccessFile;
+        FileChannel channel;
+        long size;
+        long liveBytes;
+
+        Segment(long id, File file) {
+            this.id = id;
+            this.file = file;
+        }
+
+        void open() throws IOException {
+            if (channel == null) {
+                randomAccessFile = new RandomAccessFile(file, "rw");
+                channel = randomAccessFile.getChannel();
+            }
+        }
+
+        void close() {
+            try {
+                randomAccessFile.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static class Location {
+        final Segment segment;
+        final long position;
+        final int recordSize;
+        final int keyLength;
+        final int dataLength;
+
+        Location(Segment segment, long position, int recordSize, int keyLength, int dataLength) {
+            this.segment = segment;
+            this.position = position;
+            this.recordSize = recordSize;
+            this.keyLength = keyLength;
+            this.dataLength = dataLength;
+        }
+    }
+
+    public static final class Builder {
+        private int version = -1;
+        private Context context;
+        private DataSerializer dataSerializer;
+        private boolean debugMode;
+        private long maxSegmentSize = 1024 * 1024 * 4;
+        private float compactionThreshold = 0.5f;
+        private long minCompactionBytes = 1024 * 256;
+        private Executor readExecutor;
+        private Executor writeExecutor;
+        private Executor callbackExecutor;
+        private int readParallelism = FileStorage.Builder.DEFAULT_READ_PARALLELISM;
+        private int threadPriority = FileStorage.Builder.DEFAULT_THREAD_PRIORITY;
+
+        private Builder(Context context) {
+            this.context = context.getApplicationContext();
+        }
+
+        /**
+         * @param version version of data storage. If version > current version, storage will be cleared.
+         * @return this
+         */
+        public Builder version(int version) {
+            this.version = version;
+            return this;
+        }
+
+        /**
+         * @param dataSerializer serializer for objects. By default it's {@link com.shaubert.cache.persistance.JavaSerializer JavaSerializer}
+         * @return this
+         */
+        public Builder dataSerializer(DataSerializer dataSerializer) {
+            this.dataSerializer = dataSerializer;
+            return this;
+        }
+
+        /**
+         * @param debugMode debugMode true if you want log messages and exceptions on serialization errors, false otherwise
+         * @return this
+         */
+        public Builder debugMode(boolean debugMode) {
+            this.debugMode = debugMode;
+            return this;
+        }
+
+        /**
+         * @param maxSegmentSize size of segment file after which new segment is started, 4MB by default
+         * @return this
+         */
+        public Builder maxSegmentSize(long maxSegmentSize) {
+            if (maxSegmentSize <= 0) throw new IllegalArgumentException("maxSegmentSize should be positive");
+            this.maxSegmentSize = maxSegmentSize;
+            return this;
+        }
+
+        /**
+         * @param compactionThreshold part of overwritten and deleted records in closed segments that starts
+         *                            compaction, 0.5 by default
+         * @param minCompactionBytes min size of overwritten and deleted records that starts compaction,
+         *                           256KB by default
+         * @return this
+         */
+        public Builder compaction(float compactionThreshold, long minCompactionBytes) {
+            if (compactionThreshold <= 0 || compactionThreshold > 1) {
+                throw new IllegalArgumentException("compactionThreshold should be in (0, 1]");
+            }
+            this.compactionThreshold = compactionThreshold;
+            this.minCompactionBytes = minCompactionBytes;
+            return this;
+        }
+
+        /**
+         * @param readExecutor executor for loading operations. By default storage creates own executor with
+         *                     {@link #readParallelism(int) readParallelism} threads.
+         * @return this
+         */
+        public Builder readExecutor(Executor readExecutor) {
+            this.readExecutor = readExecutor;
+            return this;
+        }
+
+        /**
+         * @param writeExecutor executor for appends and compaction, it should execute tasks one by one in order of
+         *                      submission. By default storage creates own single thread executor.
+         * @return this
+         */
+        public Builder writeExecutor(Executor writeExecutor) {
+            this.writeExecutor = writeExecutor;
+            return this;
+        }
+
+        /**
+         * @param callbackExecutor executor to call storage callbacks on. By default callbacks are called on main thread.
+         * @return this
+         */
+        public Builder callbackExecutor(Executor callbackExecutor) {
+            this.callbackExecutor = callbackExecutor;
+            return this;
+        }
+
+        /**
+         * @param readParallelism number of threads of default read executor, 2 by default
+         * @return this
+         */
+        public Builder readParallelism(int readParallelism) {
+            if (readParallelism <= 0) throw new IllegalArgumentException("readParallelism should be positive");
+            this.readParallelism = readParallelism;
+            return this;
+        }
+
+        /**
+         * @param threadPriority {@link java.lang.Thread Thread} priority of default executors,
+         *                       {@code Thread.NORM_PRIORITY - 1} by default
+         * @return this
+         */
+        public Builder threadPriority(int threadPriority) {
+            if (threadPriority < Thread.MIN_PRIORITY || threadPriority > Thread.MAX_PRIORITY) {
+                throw new IllegalArgumentException("illegal thread priority: " + threadPriority);
+            }
+            this.threadPriority = threadPriority;
+            return this;
+        }
+
+        /**
+         * Build storage or throw exception if version not set
+         * @return created storage
+         */
+        public LogStorage build() {
+            if (version == -1) {
+                throw new IllegalArgumentException("provide storage version");
+            }
+            if (dataSerializer == null) dataSerializer = new JavaSerializer();
+            if (readExecutor == null) {
+                readExecutor = StorageExecutors.newExecutor("log-storage-read", readParallelism, threadPriority);
+            }
+            if (writeExecutor == null) {
+                writeExecutor = StorageExecutors.newExecutor("log-storage-write", 1, threadPriority);
+            }
+            if (callbackExecutor == null) callbackExecutor = new MainThreadExecutor();
+            return new LogStorage(this);
+        }
+    }
+
+}
@@ -14,4 +14,17 @@ import static java.lang.annotation.RetentionPolicy.RUNTIME;
 @Retention(RUNTIME)
 public @interface PersistableData {
     Class<? extends PersistentEntryCallback> value() default SimplePersistentEntryCallback.class;
+
+    /**
+     * @return true to compress stored data regardless of
+     * {@link com.shaubert.cache.persistance.FileStorage.Builder#compressionThreshold(long) compression threshold}
+     */
+    boolean compress() default false;
+
+    /**
+     * @return true if objects of this class are never modified after they are put into cache. Storage
+     * serializes immutable objects on its background executor, other objects are serialized on the thread
+     * that calls {@link com.shaubert.cache.Entry#setValue(Object) Entry.setValue()}.
+     */
+    boolean immutable() default false;
 }
@@ -3,10 +3,16 @@ package com.shaubert.cache.persistance;
 import com.shaubert.cache.*;
 
 import java.util.*;
+import java.util.concurrent.Executor;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
-public class PersistableWrapper<DATA> implements AsyncEntry<DATA> {
+/**
+ * Entry which value is loaded from and saved to {@link com.shaubert.cache.persistance.DataStorage DataStorage}.
+ * Changes of wrapped entry are delivered to listeners if it's {@link com.shaubert.cache.ObservableEntry
+ * ObservableEntry}.
+ */
+public class PersistableWrapper<DATA> implements AsyncEntry<DATA>, ObservableEntry<DATA>, MarkQueries {
 
     private DataStorage storage;
 
@@ -15,38 +21,122 @@ public class PersistableWrapper<DATA> implements AsyncEntry<DATA> {
 
     private Lock getsLock = new ReentrantLock();
     private Set<DataCallback<DATA>> waitingAsyncGets = new HashSet<>();
+    private int savesInFlight;
+    private boolean reloadAfterSaves;
+    private boolean reloading;
+    /**
+     * Values of {@link com.shaubert.cache.MergeableData MergeableData} set while collected value is reloading,
+     * they are merged into stored value. Guarded by getsLock.
+     */
+    private final List<DATA> pendingMerges = new ArrayList<>();
     private Entry<DATA> originalEntry;
     private boolean mergeable;
+    private final EntryListeners listeners = new EntryListeners();
 
     public PersistableWrapper(Entry<DATA> entry, final PersistentEntryCallback<DATA> persistentEntryCallback, DataStorage storage) {
         this.originalEntry = entry;
         this.persistableCallback = persistentEntryCallback;
         this.storage = storage;
         this.mergeable = MergeableData.class.isAssignableFrom(entry.getDataClass());
+        EntryListeners.listen(entry, new EntryListener() {
+            @Override
+            public void onEntryChanged(Entry<?> entry, int changes) {
+                listeners.notifyChanged(PersistableWrapper.this, changes);
+            }
+        }, null);
 
         waitingForStorage = true;
+        loadFromStorage();
+    }
+
+    private void loadFromStorage() {
         storage.load(getDataClass(), getKey(), new StorageLoadCallback<DATA>() {
             @Override
             public void onSuccess(DATA data) {
                 mergeWithCurrentData(data);
-                finishLoading();
-                persistentEntryCallback.onDataLoaded(data);
+                finishLoading(true);
+                persistableCallback.onDataLoaded(data);
+            }
+
+            @Override
+            public void onEmptyResult() {
+                finishLoading(true);
+                persistableCallback.onEmptyDataLoaded();
+            }
+
+            @Override
+            public void onError() {
+                finishLoading(true);
+                persistableCallback.onDataLoadingError();
+            }
+        });
+    }
+
+    /**
+     * Loads value collected by garbage collector. It's the value that was already loaded or saved, so
+     * {@link com.shaubert.cache.persistance.PersistentEntryCallback PersistentEntryCallback} and
+     * {@link EntryListener#LOADED LOADED} listeners are not notified.
+     */
+    private void reloadFromStorage() {
+        storage.load(getDataClass(), getKey(), new StorageLoadCallback<DATA>() {
+            @Override
+            public void onSuccess(DATA data) {
+                finishReloading(data, true);
             }
 
             @Override
             public void onEmptyResult() {
-                finishLoading();
-                persistentEntryCallback.onEmptyDataLoaded();
+                finishReloading(null, true);
             }
 
             @Override
             public void onError() {
-                finishLoading();
-                persistentEntryCallback.onDataLoadingError();
+                finishReloading(null, false);
             }
         });
     }
 
+    /**
+     * Starts reload of collected value or postpones it until pending saves are finished.
+     * Called under getsLock.
+     * @return true if caller should start reload now
+     */
+    private boolean requestReload() {
+        waitingForStorage = true;
+        reloading = true;
+        if (savesInFlight > 0) {
+            reloadAfterSaves = true;
+            return false;
+        }
+        return true;
+    }
+
+    private void finishReloading(DATA dataFromStorage, boolean loaded) {
+        getsLock.lock();
+        try {
+            //value set while reloading is newer than stored one and wasn't persisted yet
+            DATA newValue = originalEntry.getValue();
+            if (newValue == null && dataFromStorage != null) {
+                originalEntry.setValue(dataFromStorage);
+            }
+            for (DATA value : pendingMerges) {
+                originalEntry.setValue(value);
+            }
+            boolean changed = newValue != null || !pendingMerges.isEmpty();
+            pendingMerges.clear();
+            reloading = false;
+
+            DATA result = originalEntry.getValue();
+            finishLoading(false);
+            //on load error merged value is partial, so it's not written over stored one
+            if (changed && result != null && (loaded || newValue != null)) {
+                persist(result);
+            }
+        } finally {
+            getsLock.unlock();
+        }
+    }
+
     private void mergeWithCurrentData(DATA dataFromStorage) {
         boolean merged = mergeable && originalEntry.getValue() != null;
         setValue(dataFromStorage);
@@ -55,26 +145,60 @@ public class PersistableWrapper<DATA> implements AsyncEntry<DATA> {
         }
     }
 
-    private void finishLoading() {
+    private void finishLoading(boolean notifyLoaded) {
         getsLock.lock();
         try {
             waitingForStorage = false;
-            if (waitingAsyncGets.isEmpty()) return;
-
-            DATA value = getValue();
-            List<DataCallback<DATA>> gets = new ArrayList<>(waitingAsyncGets);
-            for (DataCallback<DATA> get : gets) {
-                get.onDataResult(value);
+            if (!waitingAsyncGets.isEmpty()) {
+                DATA value = getValue();
+                List<DataCallback<DATA>> gets = new ArrayList<>(waitingAsyncGets);
+                for (DataCallback<DATA> get : gets) {
+                    get.onDataResult(value);
+                }
+
+                waitingAsyncGets.clear();
             }
-
-            waitingAsyncGets.clear();
         } finally {
             getsLock.unlock();
         }
+
+        if (notifyLoaded) {
+            listeners.notifyChanged(this, EntryListener.LOADED);
+        }
     }
 
+    /**
+     * Sets value and persists it. If value is {@link com.shaubert.cache.MergeableData MergeableData} and current
+     * value was collected by garbage collector, stored value is reloaded first and new value is merged into it.
+     * @param value new value
+     */
     @Override
     public void setValue(DATA value) {
+        if (mergeable && value != null) {
+            boolean queued = false;
+            boolean reload = false;
+            getsLock.lock();
+            try {
+                if (reloading) {
+                    pendingMerges.add(value);
+                    queued = true;
+                } else if (!waitingForStorage && isValueCollected()) {
+                    pendingMerges.add(value);
+                    queued = true;
+                    reload = requestReload();
+                }
+            } finally {
+                getsLock.unlock();
+            }
+
+            if (reload) {
+                reloadFromStorage();
+            }
+            if (queued) {
+                return;
+            }
+        }
+
         originalEntry.setValue(value);
 
         DATA mergedValue = getValue();
@@ -99,11 +223,21 @@ public class PersistableWrapper<DATA> implements AsyncEntry<DATA> {
         return waitingForStorage ? null : originalEntry.getValue();
     }
 
+    /**
+     * Returns value to callback. If value was collected by garbage collector
+     * (see {@link com.shaubert.cache.ReferenceEntry ReferenceEntry}) it will be reloaded from storage
+     * after pending saves of the entry are finished.
+     * @param callback value callback
+     */
     @Override
     public void getValue(DataCallback<DATA> callback) {
         boolean waiting = false;
+        boolean reload = false;
         getsLock.lock();
         try {
+            if (!waitingForStorage && isValueCollected()) {
+                reload = requestReload();
+            }
             if (waitingForStorage) {
                 waitingAsyncGets.add(callback);
                 waiting = true;
@@ -112,11 +246,18 @@ public class PersistableWrapper<DATA> implements AsyncEntry<DATA> {
             getsLock.unlock();
         }
 
-        if (!waiting) {
+        if (reload) {
+            reloadFromStorage();
+        } else if (!waiting) {
             callback.onDataResult(getValue());
         }
     }
 
+    private boolean isValueCollected() {
+        return originalEntry instanceof ReferenceEntry
+                && ((ReferenceEntry<DATA>) originalEntry).isValueCollected();
+    }
+
     public void persist() {
         DATA value = getValue();
         if (!waitingForStorage && value != null) {
@@ -124,20 +265,57 @@ public class PersistableWrapper<DATA> implements AsyncEntry<DATA> {
         }
     }
 
+    /**
+     * Save pending value now if storage is {@link com.shaubert.cache.persistance.WriteBehindStorage
+     * WriteBehindStorage}.
+     */
+    public void flush() {
+        if (storage instanceof WriteBehindStorage) {
+            ((WriteBehindStorage) storage).flush(getKey());
+        }
+    }
+
     private void persist(final DATA data) {
+        getsLock.lock();
+        try {
+            savesInFlight++;
+        } finally {
+            getsLock.unlock();
+        }
+
         storage.save(data, getKey(), new StorageSaveCallback<DATA>() {
             @Override
             public void onSuccess() {
+                finishSaving();
                 persistableCallback.onDataSaved(data);
             }
 
             @Override
             public void onError() {
+                finishSaving();
                 persistableCallback.onDataSavingError();
             }
         });
     }
 
+    private void finishSaving() {
+        boolean reload = false;
+        getsLock.lock();
+        try {
+            savesInFlight--;
+            if (savesInFlight == 0 && reloadAfterSaves) {
+                reloadAfterSaves = false;
+                reload = true;
+            }
+        } finally {
+            getsLock.unlock();
+        }
+
+        if (reload) {
+            reloadFromStorage();
+        }
+    }
+
     public void clearCache() {
         //ignoring negative case
         storage.delete(getDataClass(), getKey());
@@ -188,9 +366,29 @@ public class PersistableWrapper<DATA> implements AsyncEntry<DATA> {
         return originalEntry.getMarksOf(markClass);
     }
 
+    @Override
+    public <T> int getMarksOf(Class<T> markClass, Collection<? super T> result) {
+        return EntryMarks.getMarksOf(originalEntry, markClass, result);
+    }
+
+    @Override
+    public <T> int foreachMarkOf(Class<T> markClass, Procedure<? super T> action) {
+        return EntryMarks.foreachMarkOf(originalEntry, markClass, action);
+    }
+
     @Override
     public void clear() {
         originalEntry.clear();
     }
 
+    @Override
+    public void addListener(EntryListener listener, Executor executor) {
+        listeners.add(listener, executor);
+    }
+
+    @Override
+    public void removeListener(EntryListener listener) {
+        listeners.remove(listener);
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,18 @@
+package com.shaubert.cache.persistance;
+
+import java.util.Map;
+
+/**
+ * Callback of {@link com.shaubert.cache.persistance.FileStorage#preload(java.util.Map, PreloadCallback)
+ * FileStorage.preload()}
+ */
+public interface PreloadCallback {
+
+    /**
+     * Called when all entries are read from storage
+     * @param totalTime time from preload start to the end of the last read in milliseconds
+     * @param entryTimes read and deserialization time of every preloaded key in milliseconds
+     */
+    void onPreloaded(long totalTime, Map<String, Long> entryTimes);
+
+}
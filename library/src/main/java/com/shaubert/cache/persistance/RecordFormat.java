@@ -0,0 +1,183 @@
+package com.shaubert.cache.persistance;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+/**
+ * Header of stored data record:
+ * <pre>
+ * magic        int
+ * format       byte
+ * flags        byte
+ * key length   unsigned short
+ * key          UTF-8 bytes
+ * data length  int
+ * data CRC32   int
+ * </pre>
+ * Data (serialized object) follows the header. If {@link #FLAG_DEFLATE} is set, data is compressed with
+ * {@link com.shaubert.cache.persistance.DeflateCodec DeflateCodec}.
+ */
+class RecordFormat {
+
+    static final int MAGIC = 0x53484443;
+    static final int FORMAT = 1;
+
+    static final int FLAG_DEFLATE = 1;
+    static final int KNOWN_FLAGS = FLAG_DEFLATE;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAX_KEY_LENGTH = 0xFFFF;
+
+    static class Header {
+        final String key;
+        final int flags;
+        final int dataLength;
+        final int dataCrc;
+        final int size;
+
+        Header(String key, int flags, int dataLength, int dataCrc, int size) {
+            this.key = key;
+            this.flags = flags;
+            this.dataLength = dataLength;
+            this.dataCrc = dataCrc;
+            this.size = size;
+        }
+    }
+
+    static byte[] createHeader(String key, int flags, int dataLength, int dataCrc) throws IOException {
+        byte[] keyBytes = key.getBytes(UTF_8);
+        if (keyBytes.length > MAX_KEY_LENGTH) {
+            throw new IOException("key is too long: " + key);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + keyBytes.length);
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(MAGIC);
+        output.writeByte(FORMAT);
+        output.writeByte(flags);
+        output.writeShort(keyBytes.length);
+        output.write(keyBytes);
+        output.writeInt(dataLength);
+        output.writeInt(dataCrc);
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads header.
+     * @param buffer buffer positioned at the start of record, after call it's positioned at the start of data
+     * @return read header or null if buffer doesn't start with {@link #MAGIC}, including buffers shorter than it.
+     * Only files written before header was introduced may have no header, other such files are corrupted.
+     * @throws CorruptedDataException if header is broken
+     */
+    static Header readHeader(ByteBuffer buffer) throws CorruptedDataException {
+        int start = buffer.position();
+        try {
+            if (buffer.remaining() < 4 || buffer.getInt() != MAGIC) {
+                buffer.position(start);
+                return null;
+            }
+            int format = buffer.get() & 0xFF;
+            if (format != FORMAT) {
+                throw new CorruptedDataException("unknown format " + format);
+            }
+            int flags = buffer.get() & 0xFF;
+            int keyLength = buffer.getShort() & 0xFFFF;
+            byte[] keyBytes = new byte[keyLength];
+            buffer.get(keyBytes);
+            int dataLength = buffer.getInt();
+            if (dataLength < 0) {
+                throw new CorruptedDataException("negative data length " + dataLength);
+            }
+            int dataCrc = buffer.getInt();
+            return new Header(new String(keyBytes, UTF_8), flags, dataLength, dataCrc, 16 + keyLength);
+        } catch (BufferUnderflowException ex) {
+            throw new CorruptedDataException("unexpected end of header");
+        }
+    }
+
+    /**
+     * Reads key from header of record file.
+     * @return key or null if file doesn't start with header or can't be read
+     */
+    static String readKey(File file) {
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 256));
+            if (input.readInt() != MAGIC || input.readUnsignedByte() != FORMAT) {
+                return null;
+            }
+            input.readUnsignedByte();
+            byte[] keyBytes = new byte[input.readUnsignedShort()];
+            input.readFully(keyBytes);
+            return new String(keyBytes, UTF_8);
+        } catch (IOException ex) {
+            return null;
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    static int crc(byte[] data, int offset, int length) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(data, offset, length);
+        return (int) crc32.getValue();
+    }
+
+    /**
+     * @param buffers data between position and limit, positions are not changed
+     * @return CRC32 of data of all buffers
+     */
+    static int crc(ByteBuffer... buffers) {
+        if (buffers.length == 1 && buffers[0].hasArray()) {
+            ByteBuffer buffer = buffers[0];
+            return crc(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+
+        CRC32 crc32 = new CRC32();
+        update(crc32, buffers);
+        return (int) crc32.getValue();
+    }
+
+    /**
+     * Updates checksum with data between position and limit of buffers, positions are not changed.
+     */
+    static void update(CRC32 crc32, ByteBuffer... buffers) {
+        byte[] chunk = null;
+        for (ByteBuffer buffer : buffers) {
+            if (buffer.hasArray()) {
+                crc32.update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                continue;
+            }
+
+            if (chunk == null) chunk = new byte[1024 * 8];
+            ByteBuffer data = buffer.duplicate();
+            while (data.hasRemaining()) {
+                int length = Math.min(chunk.length, data.remaining());
+                data.get(chunk, 0, length);
+                crc32.update(chunk, 0, length);
+            }
+        }
+    }
+
+    static class CorruptedDataException extends IOException {
+        CorruptedDataException(String message) {
+            super(message);
+        }
+    }
+
+}
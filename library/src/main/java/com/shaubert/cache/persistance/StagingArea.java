@@ -0,0 +1,137 @@
+package com.shaubert.cache.persistance;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Holds data read from storage ahead of request. Staged data is returned once, on the first load of the key,
+ * and is dropped if key is saved or deleted, if key is loaded with another data class or when it's
+ * {@link #expire(java.util.Collection) expired}.
+ */
+class StagingArea {
+
+    private final ConcurrentMap<String, Staged> staged = new ConcurrentHashMap<>();
+    private final Executor callbackExecutor;
+
+    StagingArea(Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * Starts staging of key.
+     * @return staged entry to {@link #finish(Staged, boolean, Object) finish} or null if key is already staged
+     */
+    Staged begin(String key, Class<?> dataClass) {
+        Staged entry = new Staged(key, dataClass);
+        return staged.putIfAbsent(key, entry) == null ? entry : null;
+    }
+
+    /**
+     * @param entry entry returned from {@link #begin(String, Class)}
+     * @param success true if data was read without errors
+     * @param value read data or null if storage doesn't contain data
+     */
+    @SuppressWarnings("unchecked")
+    void finish(Staged entry, boolean success, Object value) {
+        List<StorageLoadCallback<?>> waiting;
+        synchronized (entry) {
+            entry.done = true;
+            entry.success = success;
+            entry.value = value;
+            waiting = entry.waiting;
+            entry.waiting = null;
+        }
+
+        if (!waiting.isEmpty() || !success) {
+            //errors are not kept, next load will read data again
+            staged.remove(entry.key, entry);
+        }
+        for (final StorageLoadCallback<?> callback : waiting) {
+            final Staged result = entry;
+            callbackExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    sendResult((StorageLoadCallback<Object>) callback, result);
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns staged data to callback. If data is ready callback is called immediately on calling thread,
+     * otherwise it's called on callback executor when data is read.
+     * @return true if data of the key is staged and callback will be called, false otherwise
+     */
+    <T> boolean deliver(Class<T> dataClass, String key, StorageLoadCallback<T> callback) {
+        Staged entry = staged.get(key);
+        if (entry == null) {
+            return false;
+        }
+        if (entry.dataClass != dataClass) {
+            //staged data will never be delivered
+            staged.remove(key, entry);
+            return false;
+        }
+
+        synchronized (entry) {
+            if (!entry.done) {
+                if (callback != null) entry.waiting.add(callback);
+                return true;
+            }
+        }
+        if (!staged.remove(key, entry)) {
+            return false;
+        }
+        if (callback != null) {
+            sendResult(callback, entry);
+        }
+        return true;
+    }
+
+    /**
+     * Drops staged data of the key. Callbacks that are already waiting for data will receive it.
+     */
+    void invalidate(String key) {
+        staged.remove(key);
+    }
+
+    /**
+     * Drops staged entries that were not delivered yet. Callbacks that are already waiting for data will receive it.
+     * @param entries entries returned from {@link #begin(String, Class)}
+     */
+    void expire(Collection<Staged> entries) {
+        for (Staged entry : entries) {
+            staged.remove(entry.key, entry);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void sendResult(StorageLoadCallback<T> callback, Staged entry) {
+        if (!entry.success) {
+            callback.onError();
+        } else if (entry.value == null) {
+            callback.onEmptyResult();
+        } else {
+            callback.onSuccess((T) entry.value);
+        }
+    }
+
+    static class Staged {
+        final String key;
+        final Class<?> dataClass;
+        private boolean done;
+        private boolean success;
+        private Object value;
+        private List<StorageLoadCallback<?>> waiting = new ArrayList<>();
+
+        Staged(String key, Class<?> dataClass) {
+            this.key = key;
+            this.dataClass = dataClass;
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+package com.shaubert.cache.persistance;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class StorageExecutors {
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * @param name name prefix of threads
+     * @param threads max number of threads, threads are stopped if there are no tasks
+     * @param priority {@link java.lang.Thread Thread} priority
+     * @return executor with unbounded queue. Queue is not bounded on purpose: every task has callback that
+     * must be delivered, so tasks can't be rejected, and callers (usually main thread) must not block.
+     */
+    public static ExecutorService newExecutor(String name, int threads, int priority) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new StorageThreadFactory(name, priority));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * @param name name of thread
+     * @param priority {@link java.lang.Thread Thread} priority
+     * @return single thread scheduled executor
+     */
+    public static ScheduledExecutorService newScheduledExecutor(String name, int priority) {
+        return new ScheduledThreadPoolExecutor(1, new StorageThreadFactory(name, priority));
+    }
+
+    private static class StorageThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger(1);
+        private final String name;
+        private final int priority;
+
+        StorageThreadFactory(String name, int priority) {
+            this.name = name;
+            this.priority = priority;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name + " #" + count.getAndIncrement());
+            thread.setDaemon(true);
+            thread.setPriority(priority);
+            return thread;
+        }
+    }
+
+}
@@ -0,0 +1,239 @@
+package com.shaubert.cache.persistance;
+
+import com.shaubert.cache.MainThreadExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link com.shaubert.cache.persistance.DataStorage DataStorage} wrapper that delays saving.
+ * Only the latest value of every key is saved after delay or on {@link #flush()} call,
+ * superseded values are dropped before serialization.
+ * <p>
+ * Loading of key with pending value returns that value without storage access, value is pending until wrapped
+ * storage reports result of its save. Save callbacks of dropped values are called with result of the save of
+ * value that replaced them. Callbacks of values dropped by {@link #delete(Class, String) delete()} are called
+ * with {@link StorageSaveCallback#onError() onError()}.
+ */
+public class WriteBehindStorage implements DataStorage {
+
+    private final DataStorage storage;
+    private final long delayMillis;
+    private final ScheduledExecutorService scheduler;
+    private final Executor callbackExecutor;
+    private final ConcurrentMap<String, PendingWrite<?>> pendingWrites = new ConcurrentHashMap<>();
+
+    /**
+     * @param storage storage to save data to
+     * @param delay max delay between first not saved value of key and saving
+     * @param unit delay unit
+     */
+    public WriteBehindStorage(DataStorage storage, long delay, TimeUnit unit) {
+        this(storage, delay, unit,
+                StorageExecutors.newScheduledExecutor("data-storage-write-behind", Thread.NORM_PRIORITY - 1));
+    }
+
+    /**
+     * @param storage storage to save data to
+     * @param delay max delay between first not saved value of key and saving
+     * @param unit delay unit
+     * @param scheduler executor to schedule saves on
+     */
+    public WriteBehindStorage(DataStorage storage, long delay, TimeUnit unit, ScheduledExecutorService scheduler) {
+        this(storage, delay, unit, scheduler, new MainThreadExecutor());
+    }
+
+    /**
+     * @param storage storage to save data to
+     * @param delay max delay between first not saved value of key and saving
+     * @param unit delay unit
+     * @param scheduler executor to schedule saves on
+     * @param callbackExecutor executor to call load callbacks of pending values on, use callback executor
+     *                         of wrapped storage. Main thread by default.
+     */
+    public WriteBehindStorage(DataStorage storage, long delay, TimeUnit unit, ScheduledExecutorService scheduler,
+                              Executor callbackExecutor) {
+        if (delay < 0) throw new IllegalArgumentException("delay should not be negative");
+        this.storage = storage;
+        this.delayMillis = unit.toMillis(delay);
+        this.scheduler = scheduler;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    @Override
+    public <T> void save(T data, final String key, StorageSaveCallback<T> callback) {
+        PendingWrite<T> write = new PendingWrite<>(data, callback);
+        PendingWrite<?> previous;
+        //write can't be submitted until callbacks of replaced value are moved to it
+        synchronized (write) {
+            previous = pendingWrites.put(key, write);
+            if (previous != null) {
+                List<StorageSaveCallback<?>> callbacks = previous.drop();
+                if (callbacks != null) {
+                    write.addCallbacks(callbacks);
+                }
+            }
+        }
+        if (previous == null || previous.isSaving()) {
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush(key);
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> void load(Class<T> dataClass, String key, final StorageLoadCallback<T> callback) {
+        PendingWrite<?> pending = pendingWrites.get(key);
+        if (pending != null) {
+            if (callback == null) return;
+
+            final T data = (T) pending.data;
+            callbackExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onSuccess(data);
+                }
+            });
+        } else {
+            storage.load(dataClass, key, callback);
+        }
+    }
+
+    @Override
+    public <T> void delete(Class<T> dataClass, String key) {
+        PendingWrite<?> pending = pendingWrites.remove(key);
+        if (pending != null) {
+            final List<StorageSaveCallback<?>> callbacks = pending.drop();
+            if (callbacks != null) {
+                callbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        PendingWrite.notifyCallbacks(callbacks, false);
+                    }
+                });
+            }
+        }
+        storage.delete(dataClass, key);
+    }
+
+    /**
+     * Save pending value of key now.
+     * @param key cache entry key
+     */
+    public void flush(String key) {
+        while (true) {
+            PendingWrite<?> pending = pendingWrites.get(key);
+            if (pending == null || !pending.startSaving()) {
+                return;
+            }
+            if (pendingWrites.get(key) == pending && pending.saveTo(storage, key, pendingWrites)) {
+                return;
+            }
+            //value was replaced before saving started, newer value is saved instead
+        }
+    }
+
+    /**
+     * Save all pending values now.
+     */
+    public void flush() {
+        for (String key : pendingWrites.keySet()) {
+            flush(key);
+        }
+    }
+
+    public DataStorage getStorage() {
+        return storage;
+    }
+
+    private static class PendingWrite<T> {
+        final T data;
+        private final AtomicBoolean saving = new AtomicBoolean();
+
+        /**
+         * Callbacks of this value and of values replaced by it. Guarded by this.
+         */
+        private final List<StorageSaveCallback<?>> callbacks = new ArrayList<>(1);
+        private boolean submitted;
+        private boolean dropped;
+
+        PendingWrite(T data, StorageSaveCallback<T> callback) {
+            this.data = data;
+            if (callback != null) callbacks.add(callback);
+        }
+
+        synchronized void addCallbacks(List<StorageSaveCallback<?>> replaced) {
+            callbacks.addAll(replaced);
+        }
+
+        /**
+         * Marks value as not needed if it's not submitted to storage yet.
+         * @return callbacks to call instead of this write or null if value is already submitted
+         */
+        synchronized List<StorageSaveCallback<?>> drop() {
+            if (submitted) return null;
+
+            dropped = true;
+            return new ArrayList<>(callbacks);
+        }
+
+        static void notifyCallbacks(List<StorageSaveCallback<?>> callbacks, boolean success) {
+            for (StorageSaveCallback<?> callback : callbacks) {
+                if (success) {
+                    callback.onSuccess();
+                } else {
+                    callback.onError();
+                }
+            }
+        }
+
+        boolean startSaving() {
+            return saving.compareAndSet(false, true);
+        }
+
+        boolean isSaving() {
+            return saving.get();
+        }
+
+        /**
+         * Saves data, pending write is removed from map when wrapped storage reports result.
+         * @return false if value was replaced or deleted and is not saved
+         */
+        boolean saveTo(DataStorage storage, final String key,
+                       final ConcurrentMap<String, PendingWrite<?>> pendingWrites) {
+            final List<StorageSaveCallback<?>> results;
+            synchronized (this) {
+                if (dropped) return false;
+
+                submitted = true;
+                results = new ArrayList<>(callbacks);
+            }
+
+            storage.save(data, key, new StorageSaveCallback<T>() {
+                @Override
+                public void onSuccess() {
+                    pendingWrites.remove(key, PendingWrite.this);
+                    notifyCallbacks(results, true);
+                }
+
+                @Override
+                public void onError() {
+                    pendingWrites.remove(key, PendingWrite.this);
+                    notifyCallbacks(results, false);
+                }
+            });
+            return true;
+        }
+    }
+
+}
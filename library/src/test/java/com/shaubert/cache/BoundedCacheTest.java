@@ -0,0 +1,72 @@
+package com.shaubert.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class BoundedCacheTest {
+
+    private BoundedCache cache;
+
+    @Before
+    public void setUp() {
+        cache = BoundedCache.newBuilder(new DefaultEntryKeyFactory(), new StringEntryFactory())
+                .maxWeight(10)
+                .weigher(new Weigher() {
+                    @Override
+                    public int weigh(Entry<?> entry) {
+                        assertFalse("weigher is called under cache lock", Thread.holdsLock(cache));
+                        Object value = entry.getValue();
+                        return value != null ? value.toString().length() : 0;
+                    }
+                })
+                .build();
+    }
+
+    @Test
+    public void evictsEntriesByWeight() {
+        put("a", "12345");
+        put("b", "12345");
+        assertEquals(10, cache.weight());
+
+        put("c", "1");
+        cache.get("c");
+
+        assertEquals(2, cache.size());
+        assertEquals(6, cache.weight());
+        assertNull(cache.get("a").getValue());
+    }
+
+    @Test
+    public void trimToSizeRecalculatesWeights() {
+        Entry<String> a = put("a", "1");
+        put("b", "1");
+
+        a.setValue("1234567890");
+        cache.trimToSize();
+
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.weight());
+        assertEquals("1", cache.<String>get("b").getValue());
+    }
+
+    private Entry<String> put(String key, String value) {
+        Entry<String> entry = cache.get(key);
+        entry.setValue(value);
+        //weight is updated on access
+        cache.get(key);
+        return entry;
+    }
+
+    private static class StringEntryFactory implements EntryFactory {
+        @SuppressWarnings("unchecked")
+        @Override
+        public <T> Entry<T> createEntry(String key) {
+            return (Entry<T>) new DefaultEntry<>(key, String.class);
+        }
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.shaubert.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FrequencySketchTest {
+
+    @Test
+    public void countsIncrements() {
+        FrequencySketch sketch = new FrequencySketch(64);
+        for (int i = 0; i < 5; i++) {
+            sketch.increment("key");
+        }
+        assertTrue(sketch.frequency("key") >= 5);
+        assertTrue(sketch.frequency("key") > sketch.frequency("other"));
+    }
+
+    @Test
+    public void limitsCounters() {
+        FrequencySketch sketch = new FrequencySketch(64);
+        for (int i = 0; i < 100; i++) {
+            sketch.increment("key");
+        }
+        assertEquals(15, sketch.frequency("key"));
+    }
+
+    @Test
+    public void frequentKeyIsEstimatedHigherThanRareKeys() {
+        FrequencySketch sketch = new FrequencySketch(256);
+        for (int i = 0; i < 100; i++) {
+            sketch.increment("rare-" + i);
+            if (i % 10 == 0) {
+                sketch.increment("hot");
+            }
+        }
+        for (int i = 0; i < 100; i++) {
+            assertTrue(sketch.frequency("hot") > sketch.frequency("rare-" + i));
+        }
+    }
+
+    @Test
+    public void frequencyDecays() {
+        FrequencySketch sketch = new FrequencySketch(16);
+        for (int i = 0; i < 15; i++) {
+            sketch.increment("old");
+        }
+        assertEquals(15, sketch.frequency("old"));
+
+        for (int i = 0; i < 1000 && sketch.frequency("old") == 15; i++) {
+            sketch.increment("new-" + i);
+        }
+        int frequency = sketch.frequency("old");
+        assertTrue("frequency " + frequency, frequency > 0 && frequency < 15);
+    }
+
+}
@@ -0,0 +1,154 @@
+package com.shaubert.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link Marks} answers queries the same way as plain {@link java.util.HashSet HashSet} of marks
+ * with {@link Class#isInstance(Object)} filtering.
+ */
+public class MarksTest {
+
+    private static final List<Class<?>> QUERY_CLASSES = Arrays.<Class<?>>asList(
+            Object.class, BaseMark.class, ChildMark.class, FinalMark.class, String.class,
+            DirtyMark.class, FailureMark.class, UpdatingMark.class);
+
+    private final List<Object> candidates = Arrays.asList(
+            Entry.DIRTY_MARK, Entry.FAILURE_MARK, Entry.UPDATING_MARK,
+            new BaseMark(1), new BaseMark(2), new ChildMark(1), new ChildMark(3),
+            new FinalMark(1), new FinalMark(2), "text");
+
+    @Test
+    public void randomOperationsMatchHashSet() {
+        Random random = new Random(42);
+        Marks marks = new Marks();
+        Set<Object> model = new HashSet<>();
+
+        for (int i = 0; i < 10000; i++) {
+            Object mark = candidates.get(random.nextInt(candidates.size()));
+            int operation = random.nextInt(10);
+            if (operation < 5) {
+                assertEquals(model.add(mark), marks.add(mark));
+            } else if (operation < 9) {
+                assertEquals(model.remove(mark), marks.remove(mark));
+            } else {
+                model.clear();
+                marks.clear();
+            }
+            assertSameMarks(model, marks);
+        }
+    }
+
+    @Test
+    public void equalMarksAreAddedOnce() {
+        Marks marks = new Marks();
+        assertTrue(marks.add(new BaseMark(1)));
+        assertFalse(marks.add(new BaseMark(1)));
+        assertEquals(1, marks.size());
+        assertTrue(marks.remove(new BaseMark(1)));
+        assertTrue(marks.isEmpty());
+        assertNull(marks.findOf(BaseMark.class));
+    }
+
+    private void assertSameMarks(Set<Object> model, Marks marks) {
+        assertEquals(model.size(), marks.size());
+        assertEquals(model.isEmpty(), marks.isEmpty());
+
+        List<Object> iterated = new ArrayList<>();
+        for (Object mark : marks) {
+            iterated.add(mark);
+        }
+        assertEquals(model.size(), iterated.size());
+        assertEquals(model, new HashSet<>(iterated));
+
+        for (Object candidate : candidates) {
+            assertEquals(model.contains(candidate), marks.contains(candidate));
+        }
+
+        for (Class<?> markClass : QUERY_CLASSES) {
+            Set<Object> expected = new HashSet<>();
+            for (Object mark : model) {
+                if (markClass.isInstance(mark)) {
+                    expected.add(mark);
+                }
+            }
+
+            List<Object> collected = new ArrayList<>();
+            assertEquals(expected.size(), marks.collectOf(markClass, collected));
+            assertEquals(expected.size(), collected.size());
+            assertEquals(expected, new HashSet<>(collected));
+
+            final List<Object> performed = new ArrayList<>();
+            int count = marks.foreachOf(markClass, new Procedure<Object>() {
+                @Override
+                public void perform(Object mark) {
+                    performed.add(mark);
+                }
+            });
+            assertEquals(expected.size(), count);
+            assertEquals(expected, new HashSet<>(performed));
+
+            Object found = marks.findOf(markClass);
+            if (expected.isEmpty()) {
+                assertNull(found);
+            } else {
+                assertTrue(expected.contains(found));
+            }
+            assertEquals(!expected.isEmpty(), marks.containsOf(markClass));
+        }
+    }
+
+    private static class BaseMark {
+        final int id;
+
+        BaseMark(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o != null && o.getClass() == getClass() && ((BaseMark) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return getClass().hashCode() * 31 + id;
+        }
+    }
+
+    private static class ChildMark extends BaseMark {
+        ChildMark(int id) {
+            super(id);
+        }
+    }
+
+    private static final class FinalMark {
+        final int id;
+
+        FinalMark(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof FinalMark && ((FinalMark) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return id;
+        }
+    }
+
+}
@@ -0,0 +1,179 @@
+package com.shaubert.cache;
+
+import com.shaubert.cache.persistance.DataStorage;
+import com.shaubert.cache.persistance.StorageLoadCallback;
+import com.shaubert.cache.persistance.StorageSaveCallback;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TieredCacheTest {
+
+    private MemoryStorage storage;
+    private TieredCache cache;
+
+    @Before
+    public void setUp() {
+        storage = new MemoryStorage();
+        cache = TieredCache.newBuilder(new DefaultEntryKeyFactory(), new StringEntryFactory(), storage)
+                .maxEntries(1)
+                .maxDiskEntries(1)
+                .build();
+    }
+
+    @Test
+    public void evictedEntryIsSpilledAndPromoted() {
+        put("a", "value a");
+        put("b", "value b");
+
+        assertEquals(1, cache.diskSize());
+        assertEquals("value a", storage.data.get("a"));
+
+        Entry<String> entry = cache.get("a");
+        assertEquals("value a", entry.getValue());
+        assertFalse(entry.hasMark(Entry.UPDATING_MARK));
+        assertFalse(storage.data.containsKey("a"));
+    }
+
+    @Test
+    public void rareKeyIsNotAdmittedToFullDiskTier() {
+        for (int i = 0; i < 5; i++) {
+            cache.get("hot");
+        }
+        put("hot", "hot value");
+        put("rare", "rare value");
+        assertTrue(storage.data.containsKey("hot"));
+
+        //evicts "rare" which is accessed less frequently than "hot"
+        put("other", "other value");
+
+        assertEquals(1, cache.diskSize());
+        assertTrue(storage.data.containsKey("hot"));
+        assertFalse(storage.data.containsKey("rare"));
+        assertNull(cache.get("rare").getValue());
+    }
+
+    @Test
+    public void frequentKeyReplacesRareKeyInDiskTier() {
+        put("rare", "rare value");
+        for (int i = 0; i < 5; i++) {
+            cache.get("hot");
+        }
+        put("hot", "hot value");
+        assertTrue(storage.data.containsKey("rare"));
+
+        //evicts "hot" which is accessed more frequently than "rare"
+        put("other", "other value");
+
+        assertEquals(1, cache.diskSize());
+        assertTrue(storage.data.containsKey("hot"));
+        assertFalse(storage.data.containsKey("rare"));
+        assertEquals("hot value", cache.get("hot").getValue());
+    }
+
+    @Test
+    public void entryEvictedDuringPromotionStaysInDiskTier() {
+        put("a", "value a");
+        put("b", "value b");
+
+        storage.deferLoads = true;
+        Entry<String> evicted = cache.get("a");
+        //evicts "a" before its value is loaded
+        cache.get("b");
+        storage.completeLoads();
+
+        assertFalse(evicted.hasValue());
+        assertTrue(storage.data.containsKey("a"));
+
+        storage.deferLoads = false;
+        Entry<String> entry = cache.get("a");
+        assertEquals("value a", entry.getValue());
+        assertFalse(storage.data.containsKey("a"));
+    }
+
+    @Test
+    public void clearRemovesDiskTier() {
+        put("a", "value a");
+        put("b", "value b");
+
+        cache.clear();
+
+        assertEquals(0, cache.diskSize());
+        assertTrue(storage.data.isEmpty());
+        assertNull(cache.get("a").getValue());
+    }
+
+    private void put(String key, String value) {
+        Entry<String> entry = cache.get(key);
+        entry.setValue(value);
+    }
+
+    private static class StringEntryFactory implements EntryFactory {
+        @SuppressWarnings("unchecked")
+        @Override
+        public <T> Entry<T> createEntry(String key) {
+            return (Entry<T>) new DefaultEntry<>(key, String.class);
+        }
+    }
+
+    /**
+     * Storage that completes all operations synchronously.
+     */
+    private static class MemoryStorage implements DataStorage {
+        final Map<String, Object> data = new HashMap<>();
+        final List<Runnable> pendingLoads = new ArrayList<>();
+        boolean deferLoads;
+
+        @Override
+        public <T> void save(T value, String key, StorageSaveCallback<T> callback) {
+            data.put(key, value);
+            callback.onSuccess();
+        }
+
+        @Override
+        public <T> void load(final Class<T> dataClass, final String key, final StorageLoadCallback<T> callback) {
+            if (deferLoads) {
+                pendingLoads.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        deliver(dataClass, key, callback);
+                    }
+                });
+            } else {
+                deliver(dataClass, key, callback);
+            }
+        }
+
+        void completeLoads() {
+            List<Runnable> loads = new ArrayList<>(pendingLoads);
+            pendingLoads.clear();
+            for (Runnable load : loads) {
+                load.run();
+            }
+        }
+
+        private <T> void deliver(Class<T> dataClass, String key, StorageLoadCallback<T> callback) {
+            Object value = data.get(key);
+            if (value == null) {
+                callback.onEmptyResult();
+            } else {
+                callback.onSuccess(dataClass.cast(value));
+            }
+        }
+
+        @Override
+        public <T> void delete(Class<T> dataClass, String key) {
+            data.remove(key);
+        }
+    }
+
+}
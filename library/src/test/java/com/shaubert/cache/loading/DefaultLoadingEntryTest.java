@@ -0,0 +1,99 @@
+package com.shaubert.cache.loading;
+
+import com.shaubert.cache.DefaultEntry;
+import com.shaubert.cache.Entry;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DefaultLoadingEntryTest {
+
+    private CountingLoader loader;
+    private ManualClockEntry entry;
+
+    @Before
+    public void setUp() {
+        loader = new CountingLoader();
+        entry = new ManualClockEntry(new DefaultEntry<>("key", String.class), loader);
+        entry.setValue("stale");
+        entry.addMark(Entry.DIRTY_MARK);
+    }
+
+    @Test
+    public void revalidationIsRetriedAfterDelay() {
+        loader.fail = true;
+        assertEquals("stale", entry.getValue());
+        assertEquals(1, loader.calls);
+        assertTrue(entry.hasMark(Entry.FAILURE_MARK));
+
+        entry.getValue();
+        assertEquals(1, loader.calls);
+
+        entry.time += DefaultLoadingEntry.MIN_RETRY_DELAY_NANOS;
+        loader.fail = false;
+        assertEquals("stale", entry.getValue());
+        assertEquals(2, loader.calls);
+        assertEquals("fresh", entry.getValue());
+        assertFalse(entry.hasMark(Entry.FAILURE_MARK));
+        assertFalse(entry.hasMark(Entry.DIRTY_MARK));
+    }
+
+    @Test
+    public void retryDelayIsDoubledAfterEveryFailure() {
+        loader.fail = true;
+        entry.getValue();
+        entry.time += DefaultLoadingEntry.MIN_RETRY_DELAY_NANOS;
+        entry.getValue();
+        assertEquals(2, loader.calls);
+
+        entry.time += DefaultLoadingEntry.MIN_RETRY_DELAY_NANOS;
+        entry.getValue();
+        assertEquals(2, loader.calls);
+
+        entry.time += DefaultLoadingEntry.MIN_RETRY_DELAY_NANOS;
+        entry.getValue();
+        assertEquals(3, loader.calls);
+    }
+
+    @Test
+    public void failureMarkedBySomebodyElseIsNotRetried() {
+        entry.addMark(Entry.FAILURE_MARK);
+        entry.time += DefaultLoadingEntry.MAX_RETRY_DELAY_NANOS;
+
+        entry.getValue();
+
+        assertEquals(0, loader.calls);
+    }
+
+    private static class ManualClockEntry extends DefaultLoadingEntry<String> {
+        long time = 12345;
+
+        ManualClockEntry(Entry<String> entry, EntryLoader<String> loader) {
+            super(entry, loader, null, true);
+        }
+
+        @Override
+        long now() {
+            return time;
+        }
+    }
+
+    private static class CountingLoader implements EntryLoader<String> {
+        int calls;
+        boolean fail;
+
+        @Override
+        public void load(Entry<String> entry, Callback<String> callback) {
+            calls++;
+            if (fail) {
+                callback.onError();
+            } else {
+                callback.onLoaded("fresh");
+            }
+        }
+    }
+
+}
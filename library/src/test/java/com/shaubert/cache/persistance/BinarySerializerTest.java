@@ -0,0 +1,155 @@
+package com.shaubert.cache.persistance;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BinarySerializerTest {
+
+    private static final int VERSION = 1;
+
+    @Test
+    public void bufferDataOutputWritesSameBytesAsDataOutputStream() throws IOException {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        DataOutputStream stream = new DataOutputStream(expected);
+        writeAll(stream);
+        stream.flush();
+
+        ByteBufferOutputStream output = new ByteBufferOutputStream();
+        try {
+            writeAll(new BinarySerializer.BufferDataOutput(output));
+            assertArrayEquals(expected.toByteArray(), toArray(output));
+        } finally {
+            output.release();
+        }
+    }
+
+    @Test
+    public void readsClassesDeclaredInFields() throws IOException {
+        BinarySerializer serializer = new BinarySerializer(VERSION, Feed.class);
+        Feed feed = new Feed();
+        feed.items = new ArrayList<>();
+        feed.items.add(new Item("first", Kind.TEXT));
+        feed.items.add(new Item("second", Kind.IMAGE));
+        feed.pinned = new Item("pinned", Kind.TEXT);
+
+        Feed result = serializer.deserialize(Feed.class, serialize(serializer, feed));
+
+        assertEquals(2, result.items.size());
+        assertEquals("second", result.items.get(1).title);
+        assertEquals(Kind.IMAGE, result.items.get(1).kind);
+        assertEquals("pinned", result.pinned.title);
+    }
+
+    @Test
+    public void rejectsNotDeclaredClass() throws IOException {
+        BinarySerializer serializer = new BinarySerializer(VERSION, Feed.class);
+        ByteBuffer data = ByteBuffer.allocate(64);
+        data.put((byte) 1).putInt(VERSION);
+        //OBJECT tag, new class
+        data.put((byte) 17).put((byte) 0);
+        byte[] name = Thread.class.getName().getBytes("UTF-8");
+        data.put((byte) name.length).put(name);
+        data.flip();
+
+        assertFails(serializer, data, "not registered");
+    }
+
+    @Test
+    public void doesNotWriteSubclassOfDeclaredClass() throws IOException {
+        BinarySerializer serializer = new BinarySerializer(VERSION, Feed.class);
+        Feed feed = new Feed();
+        feed.pinned = new Item("pinned", Kind.TEXT) {
+        };
+
+        try {
+            serialize(serializer, feed);
+            fail("subclass is written");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("not registered"));
+        }
+    }
+
+    @Test
+    public void rejectsSizeLargerThanData() throws IOException {
+        BinarySerializer serializer = new BinarySerializer(VERSION, Feed.class);
+        //BYTES, LIST and MAP tags with size Integer.MAX_VALUE
+        for (int tag : new int[]{12, 14, 16}) {
+            ByteBuffer data = ByteBuffer.allocate(16);
+            data.put((byte) 1).putInt(VERSION);
+            data.put((byte) tag).put(new byte[]{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07});
+            data.flip();
+
+            assertFails(serializer, data, "unexpected end of data");
+        }
+    }
+
+    private static void assertFails(BinarySerializer serializer, ByteBuffer data, String message) {
+        try {
+            serializer.deserialize(Object.class, data);
+            fail("data is read");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains(message));
+        }
+    }
+
+    private static ByteBuffer serialize(BinarySerializer serializer, Object data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        serializer.serialize(data, bytes);
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    private static void writeAll(DataOutput output) throws IOException {
+        output.writeByte(1);
+        output.writeInt(42);
+        output.writeBytes("bytes \u0101");
+        output.writeChars("chars \u0101");
+        output.writeUTF("utf \u0000 \u0101 \u20ac");
+        output.writeLong(-1);
+    }
+
+    enum Kind {
+        TEXT, IMAGE
+    }
+
+    static class Item {
+        String title;
+        Kind kind;
+
+        Item() {
+        }
+
+        Item(String title, Kind kind) {
+            this.title = title;
+            this.kind = kind;
+        }
+    }
+
+    static class Feed {
+        List<Item> items;
+        Item pinned;
+    }
+
+    private static byte[] toArray(ByteBufferOutputStream output) {
+        byte[] result = new byte[(int) output.size()];
+        int offset = 0;
+        for (ByteBuffer buffer : output.data()) {
+            int length = buffer.remaining();
+            buffer.duplicate().get(result, offset, length);
+            offset += length;
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.shaubert.cache.persistance;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DeflateCodecTest {
+
+    private final DeflateCodec codec = new DeflateCodec();
+
+    @Test
+    public void reusedCodecsRestoreData() throws IOException {
+        for (int i = 1; i <= 3; i++) {
+            byte[] data = newData(20000 * i);
+            assertArrayEquals(data, roundTrip(data));
+        }
+    }
+
+    @Test
+    public void codecsWorkAfterEnd() throws IOException {
+        byte[] data = newData(1000);
+        assertArrayEquals(data, roundTrip(data));
+
+        codec.end();
+
+        assertArrayEquals(data, roundTrip(data));
+        codec.end();
+    }
+
+    @Test
+    public void brokenDataDoesNotBreakNextInflate() throws IOException {
+        byte[] data = newData(1000);
+        ByteBuffer compressed = deflate(data);
+        ByteBuffer broken = ByteBuffer.allocate(compressed.remaining() / 2);
+        broken.put(compressed.array(), 0, broken.capacity());
+        broken.flip();
+
+        try {
+            codec.inflate(broken);
+            fail("broken data is inflated");
+        } catch (RecordFormat.CorruptedDataException ex) {
+            assertTrue(ex.getMessage() != null);
+        }
+
+        assertArrayEquals(data, roundTrip(data));
+    }
+
+    private byte[] roundTrip(byte[] data) throws IOException {
+        ByteBuffer result = codec.inflate(deflate(data));
+        byte[] bytes = new byte[result.remaining()];
+        result.get(bytes);
+        return bytes;
+    }
+
+    private ByteBuffer deflate(byte[] data) throws IOException {
+        ByteBufferOutputStream input = new ByteBufferOutputStream();
+        ByteBufferOutputStream compressed = null;
+        try {
+            input.write(data, 0, data.length);
+            compressed = codec.deflate(input, ByteBufferPool.shared());
+            ByteBuffer result = ByteBuffer.allocate((int) compressed.size());
+            for (ByteBuffer part : compressed.data()) {
+                result.put(part.duplicate());
+            }
+            result.flip();
+            return result;
+        } finally {
+            input.release();
+            if (compressed != null) compressed.release();
+        }
+    }
+
+    private static byte[] newData(int size) {
+        byte[] result = new byte[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = (byte) (i % 7 == 0 ? i : i % 13);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,248 @@
+package com.shaubert.cache.persistance;
+
+import android.content.Context;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FileStorageTest {
+
+    private static final int VERSION = 1;
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private TestContext context;
+    private ScheduledThreadPoolExecutor scheduler;
+
+    @Before
+    public void setUp() throws Exception {
+        context = new TestContext();
+        scheduler = new ScheduledThreadPoolExecutor(1);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+        context.delete();
+    }
+
+    private FileStorage.Builder newBuilder() {
+        return FileStorage.newBuilder(context)
+                .version(VERSION)
+                .readExecutor(DIRECT_EXECUTOR)
+                .writeExecutor(DIRECT_EXECUTOR)
+                .callbackExecutor(DIRECT_EXECUTOR)
+                .scheduler(scheduler);
+    }
+
+    @Test
+    public void deliversPreloadedData() {
+        FileStorage storage = newBuilder().build();
+        assertTrue(save(storage, "key", "value"));
+
+        storage.preload(Collections.<String, Class<?>>singletonMap("key", String.class), null);
+        assertTrue(storage.convertToFileName("key").delete());
+
+        assertEquals("value", load(storage, "key"));
+    }
+
+    @Test
+    public void expiresPreloadedData() throws Exception {
+        FileStorage storage = newBuilder()
+                .preloadRetainTime(1, TimeUnit.MILLISECONDS)
+                .build();
+        assertTrue(save(storage, "key", "value"));
+
+        storage.preload(Collections.<String, Class<?>>singletonMap("key", String.class), null);
+        assertTrue(storage.convertToFileName("key").delete());
+        awaitScheduled(10);
+
+        assertNull(load(storage, "key"));
+    }
+
+    @Test
+    public void prefetchesKeysRecordedInPreviousSession() throws Exception {
+        FileStorage storage = newBuilder()
+                .prefetchHotKeys(10, 200, TimeUnit.MILLISECONDS)
+                .build();
+        assertTrue(save(storage, "key", "value"));
+        assertEquals("value", load(storage, "key"));
+        awaitScheduled(300);
+
+        FileStorage nextSession = newBuilder()
+                .prefetchHotKeys(10, 1, TimeUnit.HOURS)
+                .build();
+        assertTrue(nextSession.convertToFileName("key").delete());
+        assertEquals("value", load(nextSession, "key"));
+    }
+
+    @Test
+    public void truncatedFileIsQuarantined() throws Exception {
+        FileStorage storage = newBuilder().build();
+        assertTrue(save(storage, "key", "value"));
+        File file = storage.convertToFileName("key");
+        write(file, new byte[]{1, 2});
+
+        assertTrue(loadFails(storage, "key"));
+        assertFalse(file.exists());
+        assertEquals(1, new File(file.getParentFile(), "corrupted").list().length);
+    }
+
+    @Test
+    public void quarantinedFilesAreKeptOnStart() throws Exception {
+        FileStorage storage = newBuilder().maxBytes(1024 * 1024).build();
+        assertTrue(save(storage, "key", "value"));
+        File file = storage.convertToFileName("key");
+        write(file, new byte[]{1, 2});
+        assertTrue(loadFails(storage, "key"));
+
+        newBuilder().maxBytes(1024 * 1024).build();
+
+        assertEquals(1, new File(file.getParentFile(), "corrupted").list().length);
+    }
+
+    @Test
+    public void quarantineKeepsRecentlyCorruptedFiles() throws Exception {
+        FileStorage storage = newBuilder().build();
+        for (int i = 0; i < 10; i++) {
+            String key = "key-" + i;
+            assertTrue(save(storage, key, "value"));
+            write(storage.convertToFileName(key), new byte[]{1, 2});
+            assertTrue(loadFails(storage, key));
+        }
+
+        File corruptedDir = new File(storage.convertToFileName("key-0").getParentFile(), "corrupted");
+        assertEquals(8, corruptedDir.list().length);
+    }
+
+    @Test
+    public void fileWithoutHeaderIsQuarantined() throws Exception {
+        FileStorage storage = newBuilder().build();
+        assertTrue(save(storage, "key", "value"));
+        File file = storage.convertToFileName("key");
+        write(file, javaSerialize("value"));
+
+        assertTrue(loadFails(storage, "key"));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void loadsFileWrittenBeforeHeader() throws Exception {
+        newBuilder().build();
+        //storage was used by library version that wrote files without header
+        context.getSharedPreferences("__sh_data_storage_prefs", Context.MODE_PRIVATE).edit()
+                .remove("legacy-files-time")
+                .commit();
+        FileStorage storage = newBuilder().build();
+        File file = storage.convertToFileName("key");
+        write(file, javaSerialize("legacy value"));
+        assertTrue(file.setLastModified(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1)));
+
+        FileStorage upgraded = newBuilder().build();
+        assertEquals("legacy value", load(upgraded, "key"));
+    }
+
+    private static void write(File file, byte[] content) throws IOException {
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(content);
+        } finally {
+            output.close();
+        }
+    }
+
+    private static byte[] javaSerialize(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new JavaSerializer().serialize(value, bytes);
+        return bytes.toByteArray();
+    }
+
+    private static boolean loadFails(FileStorage storage, String key) {
+        final boolean[] failed = new boolean[1];
+        storage.load(String.class, key, new StorageLoadCallback<String>() {
+            @Override
+            public void onSuccess(String data) {
+            }
+
+            @Override
+            public void onEmptyResult() {
+            }
+
+            @Override
+            public void onError() {
+                failed[0] = true;
+            }
+        });
+        return failed[0];
+    }
+
+    /**
+     * Waits until tasks scheduled before this call with smaller delay are executed.
+     */
+    private void awaitScheduled(long delayMillis) throws Exception {
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS).get();
+    }
+
+    private static boolean save(FileStorage storage, String key, String value) {
+        final boolean[] result = new boolean[1];
+        storage.save(value, key, new StorageSaveCallback<String>() {
+            @Override
+            public void onSuccess() {
+                result[0] = true;
+            }
+
+            @Override
+            public void onError() {
+                result[0] = false;
+            }
+        });
+        return result[0];
+    }
+
+    private static String load(FileStorage storage, String key) {
+        final String[] result = new String[1];
+        final boolean[] loaded = new boolean[1];
+        storage.load(String.class, key, new StorageLoadCallback<String>() {
+            @Override
+            public void onSuccess(String data) {
+                result[0] = data;
+                loaded[0] = true;
+            }
+
+            @Override
+            public void onEmptyResult() {
+                loaded[0] = true;
+            }
+
+            @Override
+            public void onError() {
+            }
+        });
+        assertTrue("load of " + key + " failed", loaded[0]);
+        return result[0];
+    }
+
+}
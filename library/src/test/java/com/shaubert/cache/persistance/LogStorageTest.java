@@ -0,0 +1,230 @@
+package com.shaubert.cache.persistance;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LogStorageTest {
+
+    private static final int VERSION = 1;
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private TestContext context;
+
+    @Before
+    public void setUp() throws Exception {
+        context = new TestContext();
+    }
+
+    @After
+    public void tearDown() {
+        context.delete();
+    }
+
+    private LogStorage.Builder newBuilder() {
+        return LogStorage.newBuilder(context)
+                .version(VERSION)
+                .readExecutor(DIRECT_EXECUTOR)
+                .writeExecutor(DIRECT_EXECUTOR)
+                .callbackExecutor(DIRECT_EXECUTOR);
+    }
+
+    @Test
+    public void loadsSavedData() {
+        LogStorage storage = newBuilder().build();
+        assertTrue(save(storage, "a", "value a"));
+        assertTrue(save(storage, "b", "value b"));
+
+        assertEquals("value a", load(storage, "a"));
+        assertEquals("value b", load(storage, "b"));
+        assertNull(load(storage, "c"));
+    }
+
+    @Test
+    public void replaysSegmentsOnOpen() {
+        LogStorage storage = newBuilder().build();
+        save(storage, "a", "old value");
+        save(storage, "b", "value b");
+        save(storage, "a", "new value");
+        storage.delete(String.class, "b");
+        save(storage, "c", "value c");
+
+        LogStorage reopened = newBuilder().build();
+        assertEquals("new value", load(reopened, "a"));
+        assertNull(load(reopened, "b"));
+        assertEquals("value c", load(reopened, "c"));
+    }
+
+    @Test
+    public void tombstoneHidesRecord() {
+        LogStorage storage = newBuilder().build();
+        save(storage, "a", "value a");
+        storage.delete(String.class, "a");
+        assertNull(load(storage, "a"));
+
+        save(storage, "a", "saved again");
+        assertEquals("saved again", load(storage, "a"));
+    }
+
+    @Test
+    public void compactionKeepsLatestValues() {
+        LogStorage storage = newBuilder()
+                .maxSegmentSize(512)
+                .compaction(0.25f, 1)
+                .build();
+        for (int round = 0; round < 20; round++) {
+            for (int key = 0; key < 5; key++) {
+                assertTrue(save(storage, "key-" + key, "value of round " + round));
+            }
+        }
+        storage.delete(String.class, "key-0");
+        for (int key = 1; key < 5; key++) {
+            save(storage, "key-" + key, "latest value");
+        }
+
+        assertTrue("segments " + countSegments(), countSegments() <= 2);
+        assertNull(load(storage, "key-0"));
+        for (int key = 1; key < 5; key++) {
+            assertEquals("latest value", load(storage, "key-" + key));
+        }
+
+        LogStorage reopened = newBuilder().build();
+        assertNull(load(reopened, "key-0"));
+        for (int key = 1; key < 5; key++) {
+            assertEquals("latest value", load(reopened, "key-" + key));
+        }
+    }
+
+    @Test
+    public void compactionDropsCorruptedRecord() throws Exception {
+        LogStorage storage = newBuilder()
+                .maxSegmentSize(512)
+                .compaction(0.25f, 1)
+                .build();
+        save(storage, "broken", "broken value");
+        corrupt("broken value");
+        for (int round = 0; round < 20; round++) {
+            for (int key = 0; key < 5; key++) {
+                assertTrue(save(storage, "key-" + key, "value of round " + round));
+            }
+        }
+
+        assertTrue("segments " + countSegments(), countSegments() <= 2);
+        assertNull(load(storage, "broken"));
+        for (int key = 0; key < 5; key++) {
+            assertEquals("value of round 19", load(storage, "key-" + key));
+        }
+    }
+
+    /**
+     * Flips the first byte of text in segment that contains it.
+     */
+    private void corrupt(String text) throws IOException {
+        List<File> segments = new ArrayList<>();
+        collectSegments(context.getFilesDir(), segments);
+        byte[] pattern = text.getBytes("UTF-8");
+        for (File segment : segments) {
+            RandomAccessFile file = new RandomAccessFile(segment, "rw");
+            try {
+                byte[] content = new byte[(int) file.length()];
+                file.readFully(content);
+                int position = indexOf(content, pattern);
+                if (position >= 0) {
+                    file.seek(position);
+                    file.write(content[position] ^ 0xff);
+                    return;
+                }
+            } finally {
+                file.close();
+            }
+        }
+        throw new AssertionError(text + " not found");
+    }
+
+    private static int indexOf(byte[] content, byte[] pattern) {
+        for (int i = 0; i + pattern.length <= content.length; i++) {
+            int matched = 0;
+            while (matched < pattern.length && content[i + matched] == pattern[matched]) {
+                matched++;
+            }
+            if (matched == pattern.length) return i;
+        }
+        return -1;
+    }
+
+    private int countSegments() {
+        List<File> result = new ArrayList<>();
+        collectSegments(context.getFilesDir(), result);
+        return result.size();
+    }
+
+    private static void collectSegments(File dir, List<File> result) {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+
+        for (File file : files) {
+            if (file.isDirectory()) {
+                collectSegments(file, result);
+            } else if (file.getName().endsWith(".log")) {
+                result.add(file);
+            }
+        }
+    }
+
+    private static boolean save(LogStorage storage, String key, String value) {
+        final boolean[] result = new boolean[1];
+        storage.save(value, key, new StorageSaveCallback<String>() {
+            @Override
+            public void onSuccess() {
+                result[0] = true;
+            }
+
+            @Override
+            public void onError() {
+                result[0] = false;
+            }
+        });
+        return result[0];
+    }
+
+    private static String load(LogStorage storage, String key) {
+        final String[] result = new String[1];
+        final boolean[] loaded = new boolean[1];
+        storage.load(String.class, key, new StorageLoadCallback<String>() {
+            @Override
+            public void onSuccess(String data) {
+                result[0] = data;
+                loaded[0] = true;
+            }
+
+            @Override
+            public void onEmptyResult() {
+                loaded[0] = true;
+            }
+
+            @Override
+            public void onError() {
+            }
+        });
+        assertTrue("load of " + key + " failed", loaded[0]);
+        return result[0];
+    }
+
+}
@@ -0,0 +1,161 @@
+package com.shaubert.cache.persistance;
+
+import com.shaubert.cache.DataCallback;
+import com.shaubert.cache.MergeableData;
+import com.shaubert.cache.ReferenceEntry;
+import com.shaubert.cache.ReferenceType;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PersistableWrapperTest {
+
+    @Test
+    public void mergesIntoStoredValueAfterCollection() {
+        MemoryStorage storage = new MemoryStorage();
+        CollectableEntry<Profile> entry = new CollectableEntry<>("key", Profile.class);
+        PersistableWrapper<Profile> wrapper = new PersistableWrapper<>(entry, new EmptyCallback<Profile>(), storage);
+
+        wrapper.setValue(new Profile("name", "old@mail"));
+        entry.collect();
+        wrapper.setValue(new Profile(null, "new@mail"));
+
+        Profile stored = (Profile) storage.data.get("key");
+        assertEquals("name", stored.name);
+        assertEquals("new@mail", stored.email);
+        assertEquals("name", wrapper.getValue().name);
+        assertEquals("new@mail", wrapper.getValue().email);
+    }
+
+    @Test
+    public void reloadsCollectedValue() {
+        MemoryStorage storage = new MemoryStorage();
+        CollectableEntry<Profile> entry = new CollectableEntry<>("key", Profile.class);
+        PersistableWrapper<Profile> wrapper = new PersistableWrapper<>(entry, new EmptyCallback<Profile>(), storage);
+
+        wrapper.setValue(new Profile("name", "mail"));
+        entry.collect();
+
+        ValueCallback<Profile> callback = new ValueCallback<>();
+        wrapper.getValue(callback);
+        assertTrue(callback.called);
+        assertEquals("name", callback.value.name);
+    }
+
+    /**
+     * {@link ReferenceEntry} which value is collected on demand.
+     */
+    static class CollectableEntry<T> extends ReferenceEntry<T> {
+        private T value;
+        private boolean collected;
+
+        CollectableEntry(String key, Class<T> dataClass) {
+            super(key, dataClass, ReferenceType.WEAK);
+        }
+
+        void collect() {
+            if (value != null) {
+                value = null;
+                collected = true;
+            }
+        }
+
+        @Override
+        protected T peekValue() {
+            return value;
+        }
+
+        @Override
+        protected void storeValue(T value) {
+            this.value = value;
+            collected = false;
+        }
+
+        @Override
+        public boolean isValueCollected() {
+            return collected;
+        }
+    }
+
+    static class Profile implements MergeableData<Profile> {
+        final String name;
+        final String email;
+
+        Profile(String name, String email) {
+            this.name = name;
+            this.email = email;
+        }
+
+        @Override
+        public Profile merge(Profile newData) {
+            return new Profile(newData.name != null ? newData.name : name,
+                    newData.email != null ? newData.email : email);
+        }
+    }
+
+    static class ValueCallback<T> implements DataCallback<T> {
+        boolean called;
+        T value;
+
+        @Override
+        public void onDataResult(T data) {
+            called = true;
+            value = data;
+        }
+    }
+
+    static class EmptyCallback<T> implements PersistentEntryCallback<T> {
+        @Override
+        public void onDataLoaded(T data) {
+        }
+
+        @Override
+        public void onDataLoadingError() {
+        }
+
+        @Override
+        public void onEmptyDataLoaded() {
+        }
+
+        @Override
+        public void onDataSaved(T data) {
+        }
+
+        @Override
+        public void onDataSavingError() {
+        }
+    }
+
+    /**
+     * Storage that completes all operations synchronously.
+     */
+    static class MemoryStorage implements DataStorage {
+        final Map<String, Object> data = new HashMap<>();
+
+        @Override
+        public <T> void save(T value, String key, StorageSaveCallback<T> callback) {
+            data.put(key, value);
+            callback.onSuccess();
+        }
+
+        @Override
+        public <T> void load(Class<T> dataClass, String key, StorageLoadCallback<T> callback) {
+            Object value = data.get(key);
+            if (value == null) {
+                callback.onEmptyResult();
+            } else {
+                callback.onSuccess(dataClass.cast(value));
+            }
+        }
+
+        @Override
+        public <T> void delete(Class<T> dataClass, String key) {
+            data.remove(key);
+        }
+    }
+
+}
@@ -0,0 +1,176 @@
+package com.shaubert.cache.persistance;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WriteBehindStorageTest {
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private ScheduledThreadPoolExecutor scheduler;
+    private RecordingStorage storage;
+    private WriteBehindStorage writeBehindStorage;
+
+    @Before
+    public void setUp() {
+        scheduler = new ScheduledThreadPoolExecutor(1);
+        storage = new RecordingStorage();
+        //saves are started by flush() only
+        writeBehindStorage = new WriteBehindStorage(storage, 1, TimeUnit.HOURS, scheduler, DIRECT_EXECUTOR);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void replacedWriteIsCompletedWithNewerSave() {
+        ResultCallback first = new ResultCallback();
+        ResultCallback second = new ResultCallback();
+        writeBehindStorage.save("first", "key", first);
+        writeBehindStorage.save("second", "key", second);
+
+        writeBehindStorage.flush();
+
+        assertEquals(1, storage.saved.size());
+        assertEquals("second", storage.saved.get(0));
+        assertEquals("success", first.result);
+        assertEquals("success", second.result);
+    }
+
+    @Test
+    public void replacedWriteReceivesErrorOfNewerSave() {
+        storage.fail = true;
+        ResultCallback first = new ResultCallback();
+        ResultCallback second = new ResultCallback();
+        writeBehindStorage.save("first", "key", first);
+        writeBehindStorage.save("second", "key", second);
+
+        writeBehindStorage.flush("key");
+
+        assertEquals("error", first.result);
+        assertEquals("error", second.result);
+    }
+
+    @Test
+    public void writeReplacedWhileSavingIsCompletedBySeparateSave() {
+        storage.deferred = true;
+        ResultCallback first = new ResultCallback();
+        ResultCallback second = new ResultCallback();
+        writeBehindStorage.save("first", "key", first);
+        writeBehindStorage.flush("key");
+        writeBehindStorage.save("second", "key", second);
+        writeBehindStorage.flush("key");
+
+        storage.complete();
+
+        assertEquals(2, storage.saved.size());
+        assertEquals("success", first.result);
+        assertEquals("success", second.result);
+    }
+
+    @Test
+    public void deletedWriteIsCompletedWithError() {
+        ResultCallback callback = new ResultCallback();
+        writeBehindStorage.save("value", "key", callback);
+
+        writeBehindStorage.delete(String.class, "key");
+        writeBehindStorage.flush();
+
+        assertTrue(storage.saved.isEmpty());
+        assertEquals("error", callback.result);
+    }
+
+    @Test
+    public void collectedValueIsReloadedAfterReplacedSaves() {
+        PersistableWrapperTest.MemoryStorage memoryStorage = new PersistableWrapperTest.MemoryStorage();
+        WriteBehindStorage storage = new WriteBehindStorage(memoryStorage, 1, TimeUnit.HOURS, scheduler,
+                DIRECT_EXECUTOR);
+        PersistableWrapperTest.CollectableEntry<String> entry =
+                new PersistableWrapperTest.CollectableEntry<>("key", String.class);
+        PersistableWrapper<String> wrapper = new PersistableWrapper<>(entry,
+                new PersistableWrapperTest.EmptyCallback<String>(), storage);
+
+        wrapper.setValue("first");
+        wrapper.setValue("second");
+        storage.flush();
+        entry.collect();
+
+        PersistableWrapperTest.ValueCallback<String> callback = new PersistableWrapperTest.ValueCallback<>();
+        wrapper.getValue(callback);
+        assertTrue(callback.called);
+        assertEquals("second", callback.value);
+
+        wrapper.setValue("third");
+        storage.flush();
+        assertEquals("third", memoryStorage.data.get("key"));
+    }
+
+    private static class ResultCallback implements StorageSaveCallback<String> {
+        String result;
+
+        @Override
+        public void onSuccess() {
+            assertEquals(null, result);
+            result = "success";
+        }
+
+        @Override
+        public void onError() {
+            assertEquals(null, result);
+            result = "error";
+        }
+    }
+
+    private static class RecordingStorage implements DataStorage {
+        final List<Object> saved = new ArrayList<>();
+        final List<StorageSaveCallback<?>> pending = new ArrayList<>();
+        boolean fail;
+        boolean deferred;
+
+        @Override
+        public <T> void save(T data, String key, StorageSaveCallback<T> callback) {
+            saved.add(data);
+            if (deferred) {
+                pending.add(callback);
+            } else if (fail) {
+                callback.onError();
+            } else {
+                callback.onSuccess();
+            }
+        }
+
+        void complete() {
+            for (StorageSaveCallback<?> callback : pending) {
+                callback.onSuccess();
+            }
+            pending.clear();
+        }
+
+        @Override
+        public <T> void load(Class<T> dataClass, String key, StorageLoadCallback<T> callback) {
+            callback.onEmptyResult();
+        }
+
+        @Override
+        public <T> void delete(Class<T> dataClass, String key) {
+        }
+    }
+
+}